@@ -0,0 +1,416 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command line check of a repository for case mismatches and collisions, run as a git
+ * {@code pre-commit} hook or CI step. Uses only core classes, paths are read from the index file
+ * and git is run only to list staged paths and to fix the index.
+ * <p>
+ * By default only staged new, copied and renamed paths are checked, {@code --all} checks all index
+ * paths. Mismatches are only possible on case-insensitive file systems, on case-sensitive ones
+ * paths are checked for collisions in a case-insensitive checkout.
+ * <p>
+ * Exit code is 0 if nothing was found or all found was fixed, 1 if problems remain and 2 on errors.
+ */
+final class GitFileCaseCheck {
+    static final int EXIT_OK = 0;
+    static final int EXIT_PROBLEMS = 1;
+    static final int EXIT_ERROR = 2;
+
+    static final String USAGE = "usage: git-file-case-check [--staged | --all] [--fix-git | --fix-files] [--verbose] [<repository dir>]";
+
+    File myDir = new File("");
+    boolean myAll = false;
+    boolean myFixGit = false;           // rename index entries to their file system case
+    boolean myFixFiles = false;         // rename files to their index case
+    boolean myVerbose = false;
+    PrintStream myOut = System.out;
+    PrintStream myErr = System.err;
+
+    private final ArrayList<String> myMismatchedGitPaths = new ArrayList<>();
+    private final ArrayList<String> myMismatchedFilePaths = new ArrayList<>();
+    private final ArrayList<String> myCollisions = new ArrayList<>();
+    private final long myStart = System.nanoTime();
+
+    /**
+     * @return exit code
+     */
+    int run() throws IOException {
+        File root = findRepoRoot(myDir.getAbsoluteFile());
+        if (root == null) throw new IOException("Not in a git repository: " + myDir.getAbsolutePath());
+
+        // a partial commit runs hooks on a temporary index
+        String indexPath = System.getenv("GIT_INDEX_FILE");
+        File indexFile = indexPath == null || indexPath.isEmpty() ? GitIndexReader.findIndexFile(root) : new File(indexPath).isAbsolute() ? new File(indexPath) : new File(root, indexPath);
+
+        // .git resolves as .GIT only if names are folded
+        boolean caseSensitive = !new File(root, ".GIT").exists();
+
+        // staged paths are listed by git while the index is read
+        String[] diffArgs = { "diff", "--cached", "--name-only", "-z", "--no-renames", "--diff-filter=AC" };
+        Process diff = myAll ? null : GitProcess.start(root, diffArgs);
+
+        ArrayList<String> paths = readIndexPaths(root, indexFile);
+        trace("index paths " + paths.size());
+
+        if (diff != null) {
+            List<String> stagedPaths = GitProcess.records(GitProcess.finish(diff, null, diffArgs));
+            trace("staged paths " + stagedPaths.size());
+            if (stagedPaths.isEmpty()) return EXIT_OK;
+
+            StagedPrefixes prefixes = new StagedPrefixes(stagedPaths);
+            for (String path : paths) {
+                prefixes.check(path);
+            }
+            prefixes.report(stagedPaths, !caseSensitive);
+            if (!caseSensitive) {
+                findMismatches(root, stagedPaths);
+            }
+        } else if (caseSensitive) {
+            checkCollisions(createIndex(paths, true), paths);
+        } else {
+            GitPathIndex index = createIndex(paths, false);
+            for (String path : index.getCollisions()) {
+                int node = index.findFile(path);
+                if (node != GitPathIndex.NONE) addCollision(path, index.getPath(node), null);
+            }
+
+            String rootPath = GitCaseMismatchDetector.IoFileTree.INSTANCE.getPath(root);
+            GitCaseMismatchDetector<File> detector = new GitCaseMismatchDetector<>(GitCaseMismatchDetector.IoFileTree.INSTANCE, index, rootPath.length() + 1);
+            detector.findMismatches(root, (file, gitPath, filePath) -> addMismatch(gitPath, filePath));
+        }
+        trace("checked");
+
+        for (int i = 0; i < myMismatchedGitPaths.size(); i++) {
+            myOut.println("case mismatch: " + myMismatchedGitPaths.get(i) + " in git is " + myMismatchedFilePaths.get(i) + " on disk");
+        }
+        for (String collision : myCollisions) {
+            myOut.println("case collision: " + collision);
+        }
+
+        boolean fixed = false;
+        if (!myMismatchedGitPaths.isEmpty()) {
+            if (myFixGit) {
+                fixGitCase(root);
+                fixed = true;
+            } else if (myFixFiles) {
+                fixFileCase(root);
+                fixed = true;
+            }
+            trace(fixed ? "fixed" : "not fixed");
+        }
+
+        int problems = myCollisions.size() + (fixed ? 0 : myMismatchedGitPaths.size());
+        if (problems > 0) {
+            myErr.println(problems + " case problem(s) found" + (fixed || myMismatchedGitPaths.isEmpty() ? "" : ", fix with --fix-git or --fix-files")
+                    + (myCollisions.isEmpty() ? "" : ", collisions must be resolved by removing one of the entries"));
+            return EXIT_PROBLEMS;
+        }
+        return EXIT_OK;
+    }
+
+    /**
+     * Collisions of paths with other index paths in a case-insensitive checkout, each colliding
+     * pair of files or directories is reported once
+     */
+    private void checkCollisions(@NotNull GitPathIndex index, @NotNull List<String> paths) {
+        HashSet<String> reported = new HashSet<>();
+        for (String path : paths) {
+            int node = index.findCaseCollision(path, 0, Collections.emptyList());
+            if (node == GitPathIndex.NONE) continue;
+
+            // same number of segments as the colliding node
+            int end = -1;
+            for (int parent = node; parent != GitPathIndex.ROOT; parent = index.getParent(parent)) {
+                end = path.indexOf('/', end + 1);
+                if (end == -1) end = path.length();
+            }
+            addCollision(path.substring(0, end), index.getPath(node), reported);
+        }
+    }
+
+    /**
+     * Collisions of staged paths with index paths, found in one pass over the characters of index
+     * paths instead of building a path index. Only folded prefixes of staged paths are kept.
+     */
+    private final class StagedPrefixes {
+        private final int[] myHashes;           // folded hashes of unique staged path prefixes, sorted
+        private final String[] myPrefixes;      // prefix of each hash
+        private final HashMap<String, String> myCollidingPrefixes = new HashMap<>();   // staged prefix to index prefix
+
+        StagedPrefixes(@NotNull List<String> stagedPaths) {
+            HashSet<String> prefixes = new HashSet<>();
+            for (String path : stagedPaths) {
+                for (int end = path.indexOf('/'); end != -1; end = path.indexOf('/', end + 1)) {
+                    prefixes.add(path.substring(0, end));
+                }
+                prefixes.add(path);
+            }
+
+            // hash in the high half, position in the low half, sorted by hash
+            String[] unsorted = prefixes.toArray(new String[0]);
+            long[] keys = new long[unsorted.length];
+            for (int i = 0; i < unsorted.length; i++) {
+                keys[i] = ((long) GitCaseFolding.hash(unsorted[i], 0, unsorted[i].length()) << 32) | i;
+            }
+            Arrays.sort(keys);
+
+            myHashes = new int[keys.length];
+            myPrefixes = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                myHashes[i] = (int) (keys[i] >> 32);
+                myPrefixes[i] = unsorted[(int) keys[i]];
+            }
+        }
+
+        void check(@NotNull String path) {
+            int iMax = path.length();
+            int h = 0;
+            for (int i = 0; i <= iMax; i++) {
+                char c = i < iMax ? path.charAt(i) : '/';
+                if (c == '/') {
+                    int pos = Arrays.binarySearch(myHashes, h);
+
+                    // no staged path has this prefix, so none has a longer one
+                    if (pos < 0) return;
+
+                    while (pos > 0 && myHashes[pos - 1] == h) pos--;
+                    for (; pos < myHashes.length && myHashes[pos] == h; pos++) {
+                        String prefix = myPrefixes[pos];
+                        if (prefix.length() == i && GitCaseFolding.regionMatches(path, 0, prefix, 0, i) && !path.regionMatches(0, prefix, 0, i)) {
+                            myCollidingPrefixes.putIfAbsent(prefix, path.substring(0, i));
+                        }
+                    }
+                }
+                h = 31 * h + GitCaseFolding.fold(c);
+            }
+        }
+
+        /**
+         * Add the shallowest collision of each staged path
+         *
+         * @param filesOnly true to only add collisions of full paths, on a case-insensitive file
+         *                  system a directory differing in case is also a mismatch
+         */
+        void report(@NotNull List<String> stagedPaths, boolean filesOnly) {
+            if (myCollidingPrefixes.isEmpty()) return;
+
+            HashSet<String> reported = new HashSet<>();
+            for (String path : stagedPaths) {
+                int end = 0;
+                while (end < path.length()) {
+                    end = filesOnly ? -1 : path.indexOf('/', end + 1);
+                    if (end == -1) end = path.length();
+
+                    String prefix = path.substring(0, end);
+                    String otherPath = myCollidingPrefixes.get(prefix);
+                    if (otherPath != null) {
+                        addCollision(prefix, otherPath, reported);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addCollision(@NotNull String path, @NotNull String otherPath, @Nullable HashSet<String> reported) {
+        String key = path.compareTo(otherPath) < 0 ? path + '\0' + otherPath : otherPath + '\0' + path;
+        if (reported == null || reported.add(key)) {
+            myCollisions.add(path + " differs only by case from " + otherPath);
+        }
+    }
+
+    private void addMismatch(@NotNull String gitPath, @NotNull String filePath) {
+        myMismatchedGitPaths.add(gitPath);
+        myMismatchedFilePaths.add(filePath);
+    }
+
+    /**
+     * Mismatches of given paths, resolving the case of their files by listing their directories
+     */
+    private void findMismatches(@NotNull File root, @NotNull List<String> gitPaths) {
+        HashMap<String, String[]> dirNames = new HashMap<>();
+        StringBuilder filePath = new StringBuilder();
+
+        for (String gitPath : gitPaths) {
+            filePath.setLength(0);
+            int start = 0;
+            int iMax = gitPath.length();
+
+            while (start < iMax) {
+                int end = gitPath.indexOf('/', start);
+                if (end == -1) end = iMax;
+
+                String dirPath = filePath.toString();
+                String[] names = dirNames.computeIfAbsent(dirPath, path -> {
+                    String[] list = new File(root, path).list();
+                    return list == null ? new String[0] : list;
+                });
+
+                String name = null;
+                for (String dirName : names) {
+                    if (GitCaseFolding.equals(gitPath, start, end, dirName)) {
+                        name = dirName;
+                        if (gitPath.regionMatches(start, dirName, 0, dirName.length())) break;
+                    }
+                }
+
+                // deleted after being staged
+                if (name == null) break;
+
+                if (start > 0) filePath.append('/');
+                filePath.append(name);
+                start = end + 1;
+            }
+
+            if (start >= iMax && !gitPath.contentEquals(filePath)) {
+                addMismatch(gitPath, filePath.toString());
+            }
+        }
+    }
+
+    /**
+     * Rename index entries to their file path with a single update-index, keeping each entry's
+     * mode and object id. Unmerged entries are left as is.
+     */
+    private void fixGitCase(@NotNull File root) throws IOException {
+        HashMap<String, String> renames = new HashMap<>(myMismatchedGitPaths.size() * 2);
+        for (int i = 0; i < myMismatchedGitPaths.size(); i++) {
+            renames.put(myMismatchedGitPaths.get(i), myMismatchedFilePaths.get(i));
+        }
+
+        GitIndexInfo indexInfo = new GitIndexInfo(renames);
+        for (String record : GitProcess.gitRecords(root, "ls-files", "-z", "--stage")) {
+            indexInfo.addStageRecord(record);
+        }
+
+        if (!indexInfo.isEmpty()) {
+            GitProcess.git(root, indexInfo.toBytes(), "update-index", "-z", "--index-info");
+        }
+        myOut.println("fixed git case of " + myMismatchedGitPaths.size() + " file(s)");
+    }
+
+    /**
+     * Rename files and directories to their index case, each mismatched directory once
+     */
+    private void fixFileCase(@NotNull File root) throws IOException {
+        GitCaseRenamePlanner planner = new GitCaseRenamePlanner();
+        for (int i = 0; i < myMismatchedGitPaths.size(); i++) {
+            planner.add(myMismatchedFilePaths.get(i), myMismatchedGitPaths.get(i));
+        }
+
+        // children first, planned paths are before any renames
+        List<GitCaseRenamePlanner.Rename> renames = planner.getRenames();
+        for (int i = renames.size(); i-- > 0; ) {
+            GitCaseRenamePlanner.Rename rename = renames.get(i);
+            File file = new File(root, rename.myFilePath);
+            File renamed = new File(file.getParentFile(), rename.myNewName);
+
+            // some file systems only change case through a different name
+            if (!file.renameTo(renamed)) {
+                File temp = new File(file.getParentFile(), rename.myNewName + ".case-fix-" + System.nanoTime());
+                if (!file.renameTo(temp) || !temp.renameTo(renamed)) {
+                    throw new IOException("Cannot rename " + file.getPath() + " to " + rename.myNewName);
+                }
+            }
+        }
+        myOut.println("fixed file case of " + myMismatchedGitPaths.size() + " file(s)");
+    }
+
+    @NotNull
+    private ArrayList<String> readIndexPaths(@NotNull File root, @Nullable File indexFile) throws IOException {
+        ArrayList<String> paths = new ArrayList<>();
+        if (indexFile != null) {
+            try {
+                GitIndexReader.readPaths(indexFile, paths::add);
+                return paths;
+            } catch (GitIndexReader.UnsupportedIndexException e) {
+                trace(e.getMessage() + ", using git ls-files");
+                paths.clear();
+            }
+        }
+
+        paths.addAll(GitProcess.gitRecords(root, "ls-files", "-z"));
+        return paths;
+    }
+
+    @NotNull
+    private static GitPathIndex createIndex(@NotNull List<String> paths, boolean caseSensitive) {
+        GitPathIndex index = new GitPathIndex(caseSensitive);
+        for (String path : paths) {
+            index.add(path);
+        }
+        return index;
+    }
+
+    private void trace(@NotNull String message) {
+        if (myVerbose) {
+            myErr.println(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - myStart) + " ms: " + message);
+        }
+    }
+
+    /**
+     * @return directory at or above dir containing .git, null if none
+     */
+    @Nullable
+    static File findRepoRoot(@NotNull File dir) {
+        for (File parent = dir; parent != null; parent = parent.getParentFile()) {
+            if (new File(parent, ".git").exists()) return parent;
+        }
+        return null;
+    }
+
+    public static void main(String[] args) {
+        GitFileCaseCheck check = new GitFileCaseCheck();
+        boolean dirSet = false;
+
+        for (String arg : args) {
+            switch (arg) {
+                case "--staged": check.myAll = false; break;
+                case "--all": check.myAll = true; break;
+                case "--fix-git": check.myFixGit = true; break;
+                case "--fix-files": check.myFixFiles = true; break;
+                case "--verbose": check.myVerbose = true; break;
+                case "--help":
+                    System.out.println(USAGE);
+                    System.exit(EXIT_OK);
+                    break;
+                default:
+                    if (arg.startsWith("--") || dirSet) {
+                        System.err.println("Unknown argument " + arg);
+                        System.err.println(USAGE);
+                        System.exit(EXIT_ERROR);
+                    }
+                    check.myDir = new File(arg);
+                    dirSet = true;
+            }
+        }
+
+        if (check.myFixGit && check.myFixFiles) {
+            System.err.println("Only one of --fix-git and --fix-files can be used");
+            System.exit(EXIT_ERROR);
+        }
+
+        int exitCode;
+        try {
+            exitCode = check.run();
+        } catch (IOException e) {
+            System.err.println("git-file-case-check: " + e.getMessage());
+            exitCode = EXIT_ERROR;
+        }
+        System.exit(exitCode);
+    }
+}
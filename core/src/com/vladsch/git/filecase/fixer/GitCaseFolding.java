@@ -0,0 +1,82 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Locale independent simple case folding of path characters, compares and hashes regions of
+ * paths without creating folded copies.
+ * <p>
+ * A character folds to the lower case of its upper case, which maps all case variants of a letter,
+ * including final sigma, long s and the Kelvin sign, to the same character. Dotted and dotless i
+ * only fold in Turkic locales and are left as they are.
+ */
+final class GitCaseFolding {
+    private GitCaseFolding() {
+    }
+
+    static char fold(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        if (c == '\u0130' || c == '\u0131') return c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    @NotNull
+    static String fold(@NotNull String s) {
+        int iMax = s.length();
+        for (int i = 0; i < iMax; i++) {
+            char c = s.charAt(i);
+            if (fold(c) != c) {
+                char[] chars = s.toCharArray();
+                for (int j = i; j < iMax; j++) {
+                    chars[j] = fold(chars[j]);
+                }
+                return new String(chars);
+            }
+        }
+        return s;
+    }
+
+    /**
+     * @return hash of folded region, same as String.hashCode() of its folded copy
+     */
+    static int hash(@NotNull CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + fold(s.charAt(i));
+        }
+        return h;
+    }
+
+    static boolean regionMatches(@NotNull CharSequence s, int start, @NotNull CharSequence other, int otherStart, int length) {
+        if (start < 0 || otherStart < 0 || start + length > s.length() || otherStart + length > other.length()) return false;
+
+        for (int i = 0; i < length; i++) {
+            char c1 = s.charAt(start + i);
+            char c2 = other.charAt(otherStart + i);
+            if (c1 != c2 && fold(c1) != fold(c2)) return false;
+        }
+        return true;
+    }
+
+    static boolean equals(@NotNull CharSequence s, int start, int end, @NotNull CharSequence other) {
+        return end - start == other.length() && regionMatches(s, start, other, 0, end - start);
+    }
+
+    static boolean equals(@NotNull CharSequence s, @NotNull CharSequence other) {
+        return equals(s, 0, s.length(), other);
+    }
+
+    static boolean startsWith(@NotNull CharSequence s, @NotNull CharSequence prefix) {
+        return regionMatches(s, 0, prefix, 0, prefix.length());
+    }
+
+    static int compare(@NotNull CharSequence s1, @NotNull CharSequence s2) {
+        int iMax = Math.min(s1.length(), s2.length());
+        for (int i = 0; i < iMax; i++) {
+            char c1 = fold(s1.charAt(i));
+            char c2 = fold(s2.charAt(i));
+            if (c1 != c2) return c1 - c2;
+        }
+        return s1.length() - s2.length();
+    }
+}
@@ -0,0 +1,151 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Matches index paths to a directory tree, walking the tree along the index path tree.
+ * <p>
+ * Each directory's children are listed once and looked up in the index, directories not in the
+ * index are not entered. Only mismatched files have their paths built. The file tree is an
+ * adapter, so the same walk runs on the IDE's virtual files or directly on the file system.
+ *
+ * @param <F> type of file in the tree
+ */
+final class GitCaseMismatchDetector<F> {
+    /**
+     * Directory tree being matched
+     *
+     * @param <F> type of file
+     */
+    interface FileTree<F> {
+        @NotNull
+        String getName(@NotNull F file);
+
+        /**
+         * @return '/' separated path of file, starting with the repository prefix
+         */
+        @NotNull
+        String getPath(@NotNull F file);
+
+        boolean isDirectory(@NotNull F file);
+
+        /**
+         * @return children of directory, null if it no longer exists
+         */
+        @Nullable
+        List<F> getChildren(@NotNull F dir);
+
+        /**
+         * Called for every directory visited, throws to stop the walk
+         */
+        default void checkCanceled() {
+        }
+    }
+
+    interface MismatchConsumer<F> {
+        /**
+         * @param file     mismatched file
+         * @param gitPath  index path
+         * @param filePath path of file relative to repository root
+         */
+        void accept(@NotNull F file, @NotNull String gitPath, @NotNull String filePath);
+    }
+
+    private final @NotNull FileTree<F> myTree;
+    private final @NotNull GitPathIndex myIndex;
+    private final int myPrefixLength;
+
+    /**
+     * @param tree         directory tree
+     * @param index        index paths of repository
+     * @param prefixLength length of repository prefix of paths in tree, including trailing '/'
+     */
+    GitCaseMismatchDetector(@NotNull FileTree<F> tree, @NotNull GitPathIndex index, int prefixLength) {
+        myTree = tree;
+        myIndex = index;
+        myPrefixLength = prefixLength;
+    }
+
+    /**
+     * Report all mismatched files under the repository root
+     */
+    void findMismatches(@NotNull F repoRoot, @NotNull MismatchConsumer<F> consumer) {
+        List<F> children = myTree.getChildren(repoRoot);
+        if (children != null) {
+            visitIndexChildren(GitPathIndex.ROOT, false, children, consumer);
+        }
+    }
+
+    /**
+     * Report mismatched files among children of a directory and under them
+     *
+     * @param dirNode       index node of directory
+     * @param dirMismatched true if the directory path differs in case from its index path
+     * @param children      children of the directory to check
+     */
+    void visitIndexChildren(int dirNode, boolean dirMismatched, @NotNull List<F> children, @NotNull MismatchConsumer<F> consumer) {
+        myTree.checkCanceled();
+
+        for (F child : children) {
+            String name = myTree.getName(child);
+            int node = myIndex.findChild(dirNode, name);
+            if (node == GitPathIndex.NONE) continue;
+
+            boolean mismatched = dirMismatched || !name.equals(myIndex.getName(node));
+            if (myTree.isDirectory(child)) {
+                if (myIndex.hasChildren(node)) {
+                    List<F> dirChildren = myTree.getChildren(child);
+                    if (dirChildren != null) {
+                        visitIndexChildren(node, mismatched, dirChildren, consumer);
+                    }
+                }
+            } else if ((mismatched || myIndex.isVariant(node)) && myIndex.isFile(node)) {
+                // a variant's directories can differ from the names of its parent nodes
+                String fullPath = myTree.getPath(child);
+                if (fullPath.length() >= myPrefixLength) {
+                    String filePath = fullPath.substring(myPrefixLength);
+                    String gitPath = myIndex.getPath(node);
+                    if (!gitPath.equals(filePath)) {
+                        consumer.accept(child, gitPath, filePath);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * File tree of java.io files, paths are '/' separated
+     */
+    static final class IoFileTree implements FileTree<File> {
+        static final IoFileTree INSTANCE = new IoFileTree();
+
+        private IoFileTree() {
+        }
+
+        @Override
+        public @NotNull String getName(@NotNull File file) {
+            return file.getName();
+        }
+
+        @Override
+        public @NotNull String getPath(@NotNull File file) {
+            return File.separatorChar == '/' ? file.getPath() : file.getPath().replace(File.separatorChar, '/');
+        }
+
+        @Override
+        public boolean isDirectory(@NotNull File file) {
+            return file.isDirectory();
+        }
+
+        @Override
+        public @Nullable List<File> getChildren(@NotNull File dir) {
+            File[] files = dir.listFiles();
+            return files == null ? null : Arrays.asList(files);
+        }
+    }
+}
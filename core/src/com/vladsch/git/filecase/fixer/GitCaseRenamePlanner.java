@@ -0,0 +1,112 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Plans file system renames which make file paths match the case of their git paths.
+ * <p>
+ * Every mismatched path segment becomes one rename of that file or directory, a directory shared
+ * by many mismatched files is renamed once. Renames are ordered top-down, by depth then path.
+ */
+final class GitCaseRenamePlanner {
+    static final class Rename {
+        final @NotNull String myFilePath;  // current relative file system path of file or directory
+        final @NotNull String myNewName;
+        final int myDepth;
+
+        Rename(@NotNull String filePath, @NotNull String newName, int depth) {
+            myFilePath = filePath;
+            myNewName = newName;
+            myDepth = depth;
+        }
+
+        @Override
+        public String toString() {
+            return myFilePath + " -> " + myNewName;
+        }
+    }
+
+    private final HashMap<String, Rename> myRenames = new HashMap<>();
+
+    /**
+     * Add a mismatched file
+     *
+     * @param filePath relative path on the file system
+     * @param gitPath  relative path in git
+     *
+     * @return false if paths differ other than by case and cannot be fixed by renames
+     */
+    boolean add(@NotNull String filePath, @NotNull String gitPath) {
+        if (!GitCaseFolding.equals(filePath, gitPath)) return false;
+
+        int iMax = filePath.length();
+        int depth = 0;
+        int start = 0;
+        while (start < iMax) {
+            int end = filePath.indexOf('/', start);
+            if (end == -1) end = iMax;
+
+            if (!filePath.regionMatches(start, gitPath, start, end - start)) {
+                // parent directories are relative to their file system path, first mismatch wins
+                String segmentPath = filePath.substring(0, end);
+                if (!myRenames.containsKey(segmentPath)) {
+                    myRenames.put(segmentPath, new Rename(segmentPath, gitPath.substring(start, end), depth));
+                }
+            }
+
+            depth++;
+            start = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * @return renames ordered so parent directories are renamed before their children
+     */
+    @NotNull
+    List<Rename> getRenames() {
+        ArrayList<Rename> renames = new ArrayList<>(myRenames.values());
+        renames.sort(Comparator.<Rename>comparingInt(rename -> rename.myDepth).thenComparing(rename -> rename.myFilePath));
+        return renames;
+    }
+
+    /**
+     * Find end of the first directory segment whose case differs
+     *
+     * @param gitPath  git path
+     * @param filePath file system path
+     *
+     * @return end offset of first mismatched directory, -1 if directories match
+     */
+    static int firstMismatchedDirectoryEnd(@NotNull String gitPath, @NotNull String filePath) {
+        if (filePath.length() != gitPath.length()) return -1;
+
+        int start = 0;
+        while (true) {
+            int end = gitPath.indexOf('/', start);
+            if (end == -1) return -1;
+
+            if (!gitPath.regionMatches(start, filePath, start, end - start)) return end;
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Key of the first mismatched directory, shared by all files mismatched under it
+     *
+     * @param gitPath  git path
+     * @param filePath file system path
+     *
+     * @return folded git path of first mismatched directory, null if directories match
+     */
+    static @Nullable String shortestMismatchedDirectory(@NotNull String gitPath, @NotNull String filePath) {
+        int end = firstMismatchedDirectoryEnd(gitPath, filePath);
+        return end == -1 ? null : GitCaseFolding.fold(gitPath.substring(0, end));
+    }
+}
@@ -0,0 +1,143 @@
+package com.vladsch.git.filecase.fixer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Java Flight Recorder events of the check and fix pipeline, durations are the event durations.
+ * <p>
+ * Events are begun unconditionally, which costs nothing when they are not recorded, and their
+ * fields are only set if {@link Event#shouldCommit()} is true.
+ */
+final class GitFileCaseEvents {
+    static final String CATEGORY = "Git File Case Fixer";
+
+    static final String SOURCE_INDEX = "index";
+    static final String SOURCE_LS_FILES = "ls-files";
+    static final String SOURCE_SNAPSHOT = "snapshot";
+
+    static final String DIALOG_COMMIT_PROMPT = "commit prompt";
+    static final String DIALOG_MISMATCHES = "mismatches";
+
+    static final String FIX_GIT = "git";
+    static final String FIX_FILE_SYSTEM = "file system";
+
+    private GitFileCaseEvents() {
+    }
+
+    @Name("com.vladsch.git.filecase.IndexLoad")
+    @Label("Index Load")
+    @Description("Index paths of a repository loaded from its index file, git ls-files or a snapshot")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class IndexLoad extends Event {
+        @Label("Repository Root")
+        String repoRoot;
+
+        @Label("Source")
+        String source;
+
+        @Label("Entries")
+        int entries;
+
+        @Label("Collisions")
+        int collisions;
+
+        @Label("Bytes")
+        @Description("Size of index file or snapshot, characters of ls-files output")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.vladsch.git.filecase.RootResolution")
+    @Label("Root Resolution")
+    @Description("Changed files of a commit resolved to their repository and index entry")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class RootResolution extends Event {
+        @Label("Repositories")
+        int repositories;
+
+        @Label("Changes")
+        int changes;
+
+        @Label("Mismatches")
+        int mismatches;
+
+        @Label("Collisions")
+        int collisions;
+    }
+
+    @Name("com.vladsch.git.filecase.Scan")
+    @Label("Scan")
+    @Description("Index files of repositories matched to the file system")
+    @Category(CATEGORY)
+    static final class Scan extends Event {
+        @Label("Repositories")
+        int repositories;
+
+        @Label("Scoped")
+        @Description("Only directories of changed files were scanned")
+        boolean scoped;
+
+        @Label("Tasks")
+        int tasks;
+
+        @Label("Mismatches")
+        int mismatches;
+    }
+
+    @Name("com.vladsch.git.filecase.Dialog")
+    @Label("Dialog")
+    @Description("Time a mismatch prompt or dialog was shown")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class Dialog extends Event {
+        @Label("Dialog")
+        String dialog;
+
+        @Label("Files")
+        int files;
+
+        @Label("Result")
+        String result;
+
+        /**
+         * End the event, committed if recorded
+         */
+        void end(@NotNull String dialog, int files, @NotNull String result) {
+            end();
+            if (shouldCommit()) {
+                this.dialog = dialog;
+                this.files = files;
+                this.result = result;
+                commit();
+            }
+        }
+    }
+
+    @Name("com.vladsch.git.filecase.FixBatch")
+    @Label("Fix Batch")
+    @Description("Index entries or files of a repository renamed to fix their case")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    static final class FixBatch extends Event {
+        @Label("Repository Root")
+        String repoRoot;
+
+        @Label("Fix")
+        String fix;
+
+        @Label("Files")
+        int files;
+
+        @Label("Failures")
+        int failures;
+    }
+}
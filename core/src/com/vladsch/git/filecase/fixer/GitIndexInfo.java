@@ -0,0 +1,66 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Input of {@code git update-index -z --index-info} renaming index entries, built from the records
+ * of {@code git ls-files -z --stage}.
+ * <p>
+ * A renamed entry keeps its mode and object id so file content is not hashed again. Unmerged
+ * entries are left as is.
+ */
+final class GitIndexInfo {
+    private final @NotNull Map<String, String> myRenames;
+    private final StringBuilder myInput = new StringBuilder();
+    private int myEntries;
+
+    /**
+     * @param renames index path to its new path, an empty new path only removes the entry
+     */
+    GitIndexInfo(@NotNull Map<String, String> renames) {
+        myRenames = renames;
+    }
+
+    /**
+     * Add the rename of a listed entry if it is renamed
+     *
+     * @param record {@code <mode> SP <object> SP <stage> TAB <path>}
+     */
+    void addStageRecord(@NotNull String record) {
+        int tab = record.indexOf('\t');
+        String newPath = tab == -1 ? null : myRenames.get(record.substring(tab + 1));
+        if (newPath == null) return;
+
+        int objectStart = record.indexOf(' ') + 1;
+        int stageStart = record.indexOf(' ', objectStart) + 1;
+        if (objectStart == 0 || stageStart == 0 || !record.startsWith("0", stageStart)) return;
+
+        // mode 0 removes the old entry
+        myInput.append("0 ");
+        for (int i = stageStart - 1 - objectStart; i-- > 0; ) myInput.append('0');
+        myInput.append('\t').append(record, tab + 1, record.length()).append('\0');
+        if (!newPath.isEmpty()) {
+            myInput.append(record, 0, stageStart - 1).append('\t').append(newPath).append('\0');
+        }
+        myEntries++;
+    }
+
+    /**
+     * @return number of entries renamed or removed
+     */
+    int getEntries() {
+        return myEntries;
+    }
+
+    boolean isEmpty() {
+        return myEntries == 0;
+    }
+
+    @NotNull
+    byte[] toBytes() {
+        return myInput.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,264 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reader of git index file paths, handles DIRC versions 2, 3 and 4.
+ * <p>
+ * Throws {@link UnsupportedIndexException} for index formats or required extensions it does not
+ * understand, in which case the caller should fall back to {@code git ls-files}.
+ */
+class GitIndexReader {
+    static final int SIGNATURE_DIRC = 0x44495243;
+    static final int HASH_SIZE = 20;
+    static final int ENTRY_FIXED_SIZE = 62;
+    static final int ENTRY_FLAGS_OFFSET = 60;
+    static final int ENTRY_MODE_OFFSET = 24;
+    static final int FLAG_EXTENDED = 0x4000;
+    static final int FLAG_NAME_MASK = 0x0FFF;
+    static final int MODE_TYPE_MASK = 0170000;
+    static final int MODE_TYPE_DIRECTORY = 0040000;
+
+    // windows will not let a mapped file be replaced, so read it instead
+    static final boolean USE_MEMORY_MAP = !System.getProperty("os.name", "").startsWith("Windows");
+
+    static class UnsupportedIndexException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedIndexException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Find the index file for a work tree, handles {@code .git} files used by work trees and submodules
+     *
+     * @param workTree root of the work tree
+     *
+     * @return index file or null if it does not exist
+     */
+    static @Nullable File findIndexFile(@NotNull File workTree) {
+        File dotGit = new File(workTree, ".git");
+        File gitDir = null;
+
+        if (dotGit.isDirectory()) {
+            gitDir = dotGit;
+        } else if (dotGit.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(dotGit, StandardCharsets.UTF_8))) {
+                String line = reader.readLine();
+                if (line != null && line.startsWith("gitdir:")) {
+                    gitDir = new File(line.substring("gitdir:".length()).trim());
+                    if (!gitDir.isAbsolute()) {
+                        gitDir = new File(workTree, gitDir.getPath());
+                    }
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        if (gitDir != null) {
+            File indexFile = new File(gitDir, "index");
+            if (indexFile.isFile()) {
+                return indexFile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Read all paths in the index, paths of unmerged entries are passed only once
+     *
+     * @param indexFile    index file
+     * @param pathConsumer consumer of repository relative paths
+     *
+     * @return number of paths passed to consumer
+     *
+     * @throws IOException if the file cannot be read, UnsupportedIndexException if the format is not supported
+     */
+    static int readPaths(@NotNull File indexFile, @NotNull Consumer<String> pathConsumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new UnsupportedIndexException("Index file too large " + size);
+            }
+
+            return readPaths(readBuffer(channel, (int) size), pathConsumer);
+        }
+    }
+
+    /**
+     * @return contents of file, memory mapped unless {@link #USE_MEMORY_MAP} is false
+     */
+    @NotNull
+    static ByteBuffer readBuffer(@NotNull FileChannel channel, int size) throws IOException {
+        if (USE_MEMORY_MAP) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    static int readPaths(@NotNull ByteBuffer buffer, @NotNull Consumer<String> pathConsumer) throws IOException {
+        int length = buffer.limit();
+        if (length < 12 + HASH_SIZE || buffer.getInt(0) != SIGNATURE_DIRC) {
+            throw new UnsupportedIndexException("Not a git index file");
+        }
+
+        int version = buffer.getInt(4);
+        if (version < 2 || version > 4) {
+            throw new UnsupportedIndexException("Unsupported index version " + version);
+        }
+
+        int entries = buffer.getInt(8);
+        int end = length - HASH_SIZE;
+        int pos = 12;
+        byte[] path = new byte[256];
+        int pathLength = 0;
+        int lastLength = 0;
+        byte[] lastPath = new byte[256];
+        int count = 0;
+
+        for (int e = 0; e < entries; e++) {
+            int entryStart = pos;
+            if (entryStart + ENTRY_FIXED_SIZE > end) {
+                throw new UnsupportedIndexException("Truncated index entry " + e);
+            }
+
+            if ((buffer.getInt(entryStart + ENTRY_MODE_OFFSET) & MODE_TYPE_MASK) == MODE_TYPE_DIRECTORY) {
+                // sparse directory entry
+                throw new UnsupportedIndexException("Sparse index is not supported");
+            }
+
+            int flags = buffer.getShort(entryStart + ENTRY_FLAGS_OFFSET) & 0xFFFF;
+            int stage = (flags >> 12) & 0x3;
+            pos = entryStart + ENTRY_FIXED_SIZE;
+            if ((flags & FLAG_EXTENDED) != 0) {
+                if (version < 3) {
+                    throw new UnsupportedIndexException("Extended flags in version 2 index");
+                }
+                pos += 2;
+            }
+
+            int nameStart;
+            int nameEnd;
+            if (version == 4) {
+                // strip length varint then nul terminated suffix of previous path
+                if (pos >= end) {
+                    throw new UnsupportedIndexException("Truncated index entry " + e);
+                }
+                int c = buffer.get(pos++) & 0xFF;
+                int strip = c & 0x7F;
+                while ((c & 0x80) != 0) {
+                    if (pos >= end) {
+                        throw new UnsupportedIndexException("Truncated index entry " + e);
+                    }
+                    c = buffer.get(pos++) & 0xFF;
+                    strip = ((strip + 1) << 7) | (c & 0x7F);
+                }
+
+                if (strip < 0 || strip > pathLength) {
+                    throw new UnsupportedIndexException("Invalid path prefix length in entry " + e);
+                }
+                pathLength -= strip;
+
+                nameStart = pos;
+                nameEnd = findNul(buffer, nameStart, end);
+                pos = nameEnd + 1;
+            } else {
+                pathLength = 0;
+                nameStart = pos;
+                int nameLength = flags & FLAG_NAME_MASK;
+                nameEnd = nameLength < FLAG_NAME_MASK ? nameStart + nameLength : findNul(buffer, nameStart, end);
+                if (nameEnd > end) {
+                    throw new UnsupportedIndexException("Truncated index entry " + e);
+                }
+
+                // entries are padded with 1 to 8 nul bytes to a multiple of 8
+                pos = entryStart + ((nameEnd - entryStart + 8) & ~7);
+            }
+
+            int suffixLength = nameEnd - nameStart;
+            if (pathLength + suffixLength > path.length) {
+                byte[] newPath = new byte[Math.max(path.length * 2, pathLength + suffixLength)];
+                System.arraycopy(path, 0, newPath, 0, pathLength);
+                path = newPath;
+            }
+
+            for (int i = 0; i < suffixLength; i++) {
+                path[pathLength + i] = buffer.get(nameStart + i);
+            }
+            pathLength += suffixLength;
+
+            // unmerged entries have one entry per stage, all adjacent
+            if (stage == 0 || count == 0 || !sameBytes(path, pathLength, lastPath, lastLength)) {
+                pathConsumer.accept(new String(path, 0, pathLength, StandardCharsets.UTF_8));
+                count++;
+
+                if (lastPath.length < pathLength) {
+                    lastPath = new byte[path.length];
+                }
+                System.arraycopy(path, 0, lastPath, 0, pathLength);
+                lastLength = pathLength;
+            }
+        }
+
+        // extensions, upper case signatures are optional, others change the meaning of entries
+        while (pos < end) {
+            if (pos + 8 > end) {
+                throw new UnsupportedIndexException("Truncated index extension");
+            }
+
+            int signature = buffer.getInt(pos);
+            int extensionSize = buffer.getInt(pos + 4);
+            char first = (char) (signature >>> 24);
+            if (first < 'A' || first > 'Z') {
+                throw new UnsupportedIndexException("Unsupported index extension " + signatureString(signature));
+            }
+
+            if (extensionSize < 0 || pos + 8 + extensionSize > end) {
+                throw new UnsupportedIndexException("Truncated index extension " + signatureString(signature));
+            }
+            pos += 8 + extensionSize;
+        }
+
+        if (pos != end) {
+            // most likely not a sha-1 repository
+            throw new UnsupportedIndexException("Unexpected index trailer size");
+        }
+        return count;
+    }
+
+    static int findNul(@NotNull ByteBuffer buffer, int start, int end) throws UnsupportedIndexException {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == 0) return i;
+        }
+        throw new UnsupportedIndexException("Unterminated index entry path");
+    }
+
+    static boolean sameBytes(byte[] bytes1, int length1, byte[] bytes2, int length2) {
+        if (length1 != length2) return false;
+        for (int i = 0; i < length1; i++) {
+            if (bytes1[i] != bytes2[i]) return false;
+        }
+        return true;
+    }
+
+    static String signatureString(int signature) {
+        return new String(new byte[] { (byte) (signature >>> 24), (byte) (signature >>> 16), (byte) (signature >>> 8), (byte) signature }, StandardCharsets.ISO_8859_1);
+    }
+}
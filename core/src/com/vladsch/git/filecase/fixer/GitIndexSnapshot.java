@@ -0,0 +1,161 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Path index of a repository saved to a file, valid while the git index file keeps its stamp.
+ * <p>
+ * The header identifies the repository root, case sensitivity and stamp of the git index the
+ * paths were loaded from, so validating a snapshot only reads the header. The index itself is
+ * read when first needed, from a memory mapped file where the platform allows replacing one.
+ * <p>
+ * Only index paths are saved. File system mismatches depend on the working tree and are found
+ * again by the background scan after a restart.
+ */
+final class GitIndexSnapshot {
+    static final int MAGIC = 0x47464349;     // GFCI
+    static final int VERSION = 1;
+
+    private final @NotNull File myFile;
+
+    GitIndexSnapshot(@NotNull File file) {
+        myFile = file;
+    }
+
+    @NotNull
+    File getFile() {
+        return myFile;
+    }
+
+    /**
+     * @return true if the snapshot was saved for the repository and index stamp
+     */
+    boolean isValid(@NotNull String repoPath, boolean caseSensitive, @NotNull GitIndexStamp stamp) {
+        if (!myFile.isFile()) return false;
+
+        try (FileChannel channel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer prologue = ByteBuffer.allocate(12);
+            if (channel.read(prologue, 0) != prologue.capacity()) return false;
+            prologue.flip();
+
+            int headerLength = readPrologue(prologue);
+            if (headerLength > channel.size() - prologue.capacity()) return false;
+
+            ByteBuffer header = ByteBuffer.allocate(headerLength);
+            if (channel.read(header, prologue.capacity()) != headerLength) return false;
+            header.flip();
+            return isHeaderValid(header, repoPath, caseSensitive, stamp);
+        } catch (IOException ignored) {
+            return false;
+        }
+    }
+
+    /**
+     * @return index saved for the repository and stamp
+     *
+     * @throws IOException if the snapshot cannot be read or was saved for a different repository or stamp
+     */
+    @NotNull
+    GitPathIndex load(@NotNull String repoPath, boolean caseSensitive, @NotNull GitIndexStamp stamp) throws IOException {
+        try (FileChannel channel = FileChannel.open(myFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Snapshot too large " + size);
+
+            ByteBuffer buffer = GitIndexReader.readBuffer(channel, (int) size);
+
+            int headerLength = readPrologue(buffer);
+            int bodyStart = buffer.position() + headerLength;
+            if (bodyStart > buffer.limit()) throw new IOException("Truncated header");
+
+            if (!isHeaderValid(buffer, repoPath, caseSensitive, stamp)) {
+                throw new IOException("Snapshot " + myFile.getPath() + " is not for " + repoPath + " " + stamp);
+            }
+
+            buffer.position(bodyStart);
+            return GitPathIndex.read(buffer, caseSensitive);
+        }
+    }
+
+    /**
+     * Save index, written to a temporary file first so a partially written snapshot is never read
+     */
+    void save(@NotNull String repoPath, boolean caseSensitive, @NotNull GitIndexStamp stamp, @NotNull GitPathIndex index) throws IOException {
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        try (DataOutputStream header = new DataOutputStream(headerBytes)) {
+            GitPathIndex.writeString(header, repoPath);
+            header.writeBoolean(caseSensitive);
+            stamp.write(header);
+        }
+
+        File parent = myFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent.getPath());
+        }
+
+        File tempFile = new File(myFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            index.write(out);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            throw e;
+        }
+
+        Files.move(tempFile.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    void delete() {
+        //noinspection ResultOfMethodCallIgnored
+        myFile.delete();
+    }
+
+    /**
+     * @return length of header following the prologue
+     */
+    private static int readPrologue(@NotNull ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("Not an index snapshot");
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("Unsupported snapshot version " + version);
+
+            int headerLength = buffer.getInt();
+            if (headerLength < 0) throw new IOException("Invalid header length " + headerLength);
+            return headerLength;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    private static boolean isHeaderValid(@NotNull ByteBuffer header, @NotNull String repoPath, boolean caseSensitive, @Nullable GitIndexStamp stamp) throws IOException {
+        try {
+            return GitPathIndex.readString(header).equals(repoPath)
+                    && (header.get() != 0) == caseSensitive
+                    && GitIndexStamp.read(header).equals(stamp);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated header", e);
+        }
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "GitIndexSnapshot{" + myFile.getPath() + "}";
+    }
+}
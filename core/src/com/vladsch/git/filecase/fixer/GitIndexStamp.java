@@ -0,0 +1,91 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Identifies a version of a git index file by size, modification time and trailing checksum.
+ * <p>
+ * The checksum is needed because git can rewrite the index within the file system time stamp
+ * resolution without changing its size.
+ */
+final class GitIndexStamp {
+    final long myLength;
+    final long myLastModified;
+    final byte[] myChecksum;
+
+    private GitIndexStamp(long length, long lastModified, byte[] checksum) {
+        myLength = length;
+        myLastModified = lastModified;
+        myChecksum = checksum;
+    }
+
+    static @Nullable GitIndexStamp of(@Nullable File indexFile) {
+        if (indexFile == null) return null;
+
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "r")) {
+            long length = file.length();
+            long lastModified = indexFile.lastModified();
+            byte[] checksum = new byte[GitIndexReader.HASH_SIZE];
+
+            if (length >= checksum.length) {
+                file.seek(length - checksum.length);
+                file.readFully(checksum);
+            }
+            return new GitIndexStamp(length, lastModified, checksum);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    void write(@NotNull DataOutputStream out) throws IOException {
+        out.writeLong(myLength);
+        out.writeLong(myLastModified);
+        out.writeInt(myChecksum.length);
+        out.write(myChecksum);
+    }
+
+    static @NotNull GitIndexStamp read(@NotNull ByteBuffer buffer) throws IOException {
+        try {
+            long length = buffer.getLong();
+            long lastModified = buffer.getLong();
+            int checksumLength = buffer.getInt();
+            if (checksumLength != GitIndexReader.HASH_SIZE) throw new IOException("Invalid checksum length " + checksumLength);
+
+            byte[] checksum = new byte[checksumLength];
+            buffer.get(checksum);
+            return new GitIndexStamp(length, lastModified, checksum);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated index stamp", e);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GitIndexStamp)) return false;
+        GitIndexStamp other = (GitIndexStamp) o;
+        return myLength == other.myLength && myLastModified == other.myLastModified && Arrays.equals(myChecksum, other.myChecksum);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(myLength);
+        result = 31 * result + Long.hashCode(myLastModified);
+        result = 31 * result + Arrays.hashCode(myChecksum);
+        return result;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "GitIndexStamp{length=" + myLength + ", lastModified=" + myLastModified + "}";
+    }
+}
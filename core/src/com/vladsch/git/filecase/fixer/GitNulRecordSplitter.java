@@ -0,0 +1,50 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Splits output of commands run with {@code -z} on NUL, passing each record to the consumer as
+ * soon as it is complete. Text may arrive in chunks of any size, a record split across chunks is
+ * joined. Empty records are skipped.
+ */
+final class GitNulRecordSplitter {
+    private final @NotNull Consumer<String> myRecordConsumer;
+    private final StringBuilder myPartialRecord = new StringBuilder();
+
+    GitNulRecordSplitter(@NotNull Consumer<String> recordConsumer) {
+        myRecordConsumer = recordConsumer;
+    }
+
+    void append(@NotNull CharSequence text) {
+        int lastPos = 0;
+        int iMax = text.length();
+        for (int i = 0; i < iMax; i++) {
+            if (text.charAt(i) == '\0') {
+                if (myPartialRecord.length() > 0) {
+                    myPartialRecord.append(text, lastPos, i);
+                    myRecordConsumer.accept(myPartialRecord.toString());
+                    myPartialRecord.setLength(0);
+                } else if (i > lastPos) {
+                    myRecordConsumer.accept(text.subSequence(lastPos, i).toString());
+                }
+                lastPos = i + 1;
+            }
+        }
+
+        if (lastPos < iMax) {
+            myPartialRecord.append(text, lastPos, iMax);
+        }
+    }
+
+    /**
+     * Pass the last record if output did not end with NUL
+     */
+    void finish() {
+        if (myPartialRecord.length() > 0) {
+            myRecordConsumer.accept(myPartialRecord.toString());
+            myPartialRecord.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,701 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index paths of a repository stored as a tree of path segments.
+ * <p>
+ * Every distinct segment string is stored once, nodes are entries in parallel int arrays and
+ * children are found through an open addressing table keyed on parent node and folded segment.
+ * Segments are found by hashing and comparing regions of the path folded with {@link GitCaseFolding},
+ * lookups of existing paths do not allocate. Full paths are only built when asked for.
+ * <p>
+ * On a case-insensitive index paths differing only by case resolve to the same node, which keeps
+ * the case of the first one added. A file whose directories differ in case from the nodes keeps
+ * its own path. A file differing only by case from one already added is a collision, only one of
+ * them can exist in a case-insensitive checkout. Collisions are kept in the order added.
+ */
+final class GitPathIndex {
+    static final int ROOT = 0;
+    static final int NONE = -1;
+
+    private final boolean myCaseSensitive;
+
+    // segments, the first segment of each case variant represents the others
+    private String[] mySegments = new String[64];
+    private int[] myFoldedSegments = new int[64];
+    private int mySegmentCount;
+
+    // segment + 1 for each used slot, 0 for empty. Exact table is not used if case-sensitive
+    private int[] mySegmentTable = new int[128];
+    private int[] myFoldedSegmentTable = new int[128];
+
+    // nodes, root has no segment
+    private int[] myParents = new int[64];
+    private int[] myNodeSegments = new int[64];
+    private int[] myFirstChildren = new int[64];
+    private int[] myLastChildren = new int[64];
+    private int[] myNextSiblings = new int[64];
+    private int[] myFileCounts = new int[64];
+    private final BitSet myFiles = new BitSet();
+    private int myNodeCount;
+
+    // node + 1 for each used slot, 0 for empty
+    private int[] myTable = new int[128];
+
+    // files whose path differs in case from the path of their node
+    private final HashMap<Integer, String> myVariantPaths = new HashMap<>();
+    private final ArrayList<String> myCollisions = new ArrayList<>();
+
+    // folded full path lookup of a case-sensitive index, built on first use and dropped when nodes are added
+    private volatile FoldedPaths myFoldedPaths;
+
+    private static final class FoldedPaths {
+        final int[] myHashes;   // folded path hash of each node
+        final int[] myTable;    // node + 1 for each used slot, 0 for empty
+
+        FoldedPaths(int[] hashes, int[] table) {
+            myHashes = hashes;
+            myTable = table;
+        }
+    }
+
+    GitPathIndex(boolean caseSensitive) {
+        myCaseSensitive = caseSensitive;
+        myParents[ROOT] = NONE;
+        myNodeSegments[ROOT] = NONE;
+        myFirstChildren[ROOT] = NONE;
+        myLastChildren[ROOT] = NONE;
+        myNextSiblings[ROOT] = NONE;
+        myNodeCount = 1;
+    }
+
+    boolean isCaseSensitive() {
+        return myCaseSensitive;
+    }
+
+    /**
+     * @return number of files
+     */
+    int size() {
+        return myFileCounts[ROOT];
+    }
+
+    /**
+     * Add a file path
+     *
+     * @param path '/' separated path relative to repository root
+     */
+    void add(@NotNull String path) {
+        int node = ROOT;
+        boolean exact = true;
+        int iMax = path.length();
+        int start = 0;
+
+        while (start < iMax) {
+            int end = path.indexOf('/', start);
+            if (end == -1) end = iMax;
+
+            if (end > start) {
+                int foldedSegment = findFoldedSegment(path, start, end);
+                int child = foldedSegment == NONE ? NONE : findChild(node, foldedSegment);
+
+                if (child == NONE) {
+                    int segment = foldedSegment == NONE ? NONE : findSegment(path, start, end);
+                    if (segment == NONE) segment = addSegment(path.substring(start, end), foldedSegment);
+                    child = addNode(node, segment);
+                } else if (exact && !myCaseSensitive) {
+                    exact = regionEquals(path, start, end, mySegments[myNodeSegments[child]]);
+                }
+                node = child;
+            }
+            start = end + 1;
+        }
+
+        if (node == ROOT) return;
+
+        if (myFiles.get(node)) {
+            // same path is a duplicate, not a collision
+            if (!myCaseSensitive && !getPath(node).equals(path)) {
+                myCollisions.add(path);
+            }
+        } else {
+            myFiles.set(node);
+            for (int parent = node; parent != NONE; parent = myParents[parent]) {
+                myFileCounts[parent]++;
+            }
+
+            if (!exact) {
+                myVariantPaths.put(node, path);
+            }
+        }
+    }
+
+    /**
+     * Find node of a path, folded on a case-insensitive index
+     *
+     * @param path '/' separated path relative to repository root
+     *
+     * @return node or NONE
+     */
+    int find(@NotNull CharSequence path) {
+        return find(path, 0);
+    }
+
+    /**
+     * Find node of a path, folded on a case-insensitive index
+     *
+     * @param path  '/' separated path
+     * @param start offset of path relative to repository root
+     *
+     * @return node or NONE
+     */
+    int find(@NotNull CharSequence path, int start) {
+        int node = ROOT;
+        int iMax = path.length();
+
+        while (start < iMax && node != NONE) {
+            int end = indexOf(path, '/', start, iMax);
+
+            if (end > start) {
+                node = findChild(node, path, start, end);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * @return file node of a path or NONE
+     */
+    int findFile(@NotNull CharSequence path) {
+        return findFile(path, 0);
+    }
+
+    /**
+     * @return file node of path starting at offset or NONE
+     */
+    int findFile(@NotNull CharSequence path, int start) {
+        int node = find(path, start);
+        return node != NONE && myFiles.get(node) ? node : NONE;
+    }
+
+    /**
+     * Find child of a node, folded on a case-insensitive index
+     *
+     * @return child node or NONE
+     */
+    int findChild(int node, @NotNull CharSequence name) {
+        return findChild(node, name, 0, name.length());
+    }
+
+    /**
+     * Find child of a node by a region of a path, folded on a case-insensitive index
+     *
+     * @return child node or NONE
+     */
+    int findChild(int node, @NotNull CharSequence path, int start, int end) {
+        int foldedSegment = findFoldedSegment(path, start, end);
+        return foldedSegment == NONE ? NONE : findChild(node, foldedSegment);
+    }
+
+    /**
+     * Find a file or directory a path would collide with in a case-insensitive checkout. Needed
+     * on a case-sensitive index, a case-insensitive one resolves such paths to the same node.
+     * <p>
+     * Checks each directory of the path and the path itself against a table of folded paths,
+     * built on first use, in O(path depth).
+     *
+     * @param path        '/' separated path
+     * @param start       offset of path relative to repository root
+     * @param movedPaths  old paths of files moved away, at the same offset as path, nodes whose
+     *                    files are all moved away do not collide
+     *
+     * @return shallowest node whose path differs only by case from the same part of path, NONE if none
+     */
+    int findCaseCollision(@NotNull CharSequence path, int start, @NotNull Collection<? extends CharSequence> movedPaths) {
+        FoldedPaths foldedPaths = getFoldedPaths();
+        int[] table = foldedPaths.myTable;
+        int mask = table.length - 1;
+        int iMax = path.length();
+        int h = 0;
+        int end = start;
+
+        while (end < iMax) {
+            int segmentEnd = indexOf(path, '/', end, iMax);
+            if (segmentEnd == end) {
+                end = segmentEnd + 1;
+                continue;
+            }
+
+            h = foldedPathHash(h, GitCaseFolding.hash(path, end, segmentEnd));
+            boolean found = false;
+
+            for (int slot = mix(h) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int node = table[slot] - 1;
+                if (foldedPaths.myHashes[node] != h || !pathEquals(node, path, start, segmentEnd, false)) continue;
+
+                found = true;
+                if (!pathEquals(node, path, start, segmentEnd, true) && countFiles(node, movedPaths, start) != myFileCounts[node]) {
+                    return node;
+                }
+            }
+
+            // no deeper path can match without its directory matching
+            if (!found) break;
+            end = segmentEnd + 1;
+        }
+        return NONE;
+    }
+
+    /**
+     * @return paths of files added after a file differing from them only by case
+     */
+    @NotNull
+    List<String> getCollisions() {
+        return myCollisions;
+    }
+
+    /**
+     * @return true if path of file node differs in case from the names of its parent nodes
+     */
+    boolean isVariant(int node) {
+        return !myVariantPaths.isEmpty() && myVariantPaths.containsKey(node);
+    }
+
+    boolean isFile(int node) {
+        return myFiles.get(node);
+    }
+
+    boolean hasChildren(int node) {
+        return myFirstChildren[node] != NONE;
+    }
+
+    int getFirstChild(int node) {
+        return myFirstChildren[node];
+    }
+
+    int getNextSibling(int node) {
+        return myNextSiblings[node];
+    }
+
+    int getParent(int node) {
+        return myParents[node];
+    }
+
+    /**
+     * @return number of files at or under the node
+     */
+    int getFileCount(int node) {
+        return myFileCounts[node];
+    }
+
+    /**
+     * @return segment of node in the case it was added
+     */
+    @NotNull
+    String getName(int node) {
+        return node == ROOT ? "" : mySegments[myNodeSegments[node]];
+    }
+
+    /**
+     * @return path of node in the case it was added
+     */
+    @NotNull
+    String getPath(int node) {
+        if (node == ROOT) return "";
+
+        String variantPath = myVariantPaths.isEmpty() ? null : myVariantPaths.get(node);
+        if (variantPath != null) return variantPath;
+
+        ArrayList<String> segments = new ArrayList<>();
+        int length = -1;
+        for (int parent = node; parent != ROOT; parent = myParents[parent]) {
+            String segment = mySegments[myNodeSegments[parent]];
+            segments.add(segment);
+            length += segment.length() + 1;
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = segments.size(); i-- > 0; ) {
+            sb.append(segments.get(i));
+            if (i > 0) sb.append('/');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Release unused capacity once all paths are added
+     */
+    void trimToSize() {
+        myCollisions.trimToSize();
+        mySegments = Arrays.copyOf(mySegments, mySegmentCount);
+        myFoldedSegments = Arrays.copyOf(myFoldedSegments, mySegmentCount);
+        myParents = Arrays.copyOf(myParents, myNodeCount);
+        myNodeSegments = Arrays.copyOf(myNodeSegments, myNodeCount);
+        myFirstChildren = Arrays.copyOf(myFirstChildren, myNodeCount);
+        myLastChildren = Arrays.copyOf(myLastChildren, myNodeCount);
+        myNextSiblings = Arrays.copyOf(myNextSiblings, myNodeCount);
+        myFileCounts = Arrays.copyOf(myFileCounts, myNodeCount);
+    }
+
+    /**
+     * Write segments, nodes, files, variant paths and collisions. Lookup tables and child lists
+     * are rebuilt when read.
+     */
+    void write(@NotNull DataOutputStream out) throws IOException {
+        out.writeInt(mySegmentCount);
+        for (int id = 0; id < mySegmentCount; id++) {
+            out.writeInt(myFoldedSegments[id]);
+            writeString(out, mySegments[id]);
+        }
+
+        out.writeInt(myNodeCount);
+        for (int node = ROOT + 1; node < myNodeCount; node++) {
+            out.writeInt(myParents[node]);
+            out.writeInt(myNodeSegments[node]);
+        }
+
+        long[] files = myFiles.toLongArray();
+        out.writeInt(files.length);
+        for (long bits : files) {
+            out.writeLong(bits);
+        }
+
+        out.writeInt(myVariantPaths.size());
+        for (Map.Entry<Integer, String> entry : myVariantPaths.entrySet()) {
+            out.writeInt(entry.getKey());
+            writeString(out, entry.getValue());
+        }
+
+        out.writeInt(myCollisions.size());
+        for (String collision : myCollisions) {
+            writeString(out, collision);
+        }
+    }
+
+    /**
+     * Read an index written by {@link #write(DataOutputStream)}, segments and nodes are added in
+     * their original order so their ids do not change
+     *
+     * @throws IOException if the data is truncated or inconsistent
+     */
+    @NotNull
+    static GitPathIndex read(@NotNull ByteBuffer buffer, boolean caseSensitive) throws IOException {
+        try {
+            GitPathIndex index = new GitPathIndex(caseSensitive);
+
+            int segmentCount = readCount(buffer);
+            for (int id = 0; id < segmentCount; id++) {
+                int foldedSegment = buffer.getInt();
+                if (foldedSegment < 0 || foldedSegment > id) throw new IOException("Invalid folded segment " + foldedSegment + " of segment " + id);
+                index.addSegment(readString(buffer), foldedSegment == id ? NONE : foldedSegment);
+            }
+
+            int nodeCount = readCount(buffer);
+            for (int node = ROOT + 1; node < nodeCount; node++) {
+                int parent = buffer.getInt();
+                int segment = buffer.getInt();
+                if (parent < ROOT || parent >= node || segment < 0 || segment >= segmentCount) throw new IOException("Invalid node " + node);
+                index.addNode(parent, segment);
+            }
+
+            long[] files = new long[readCount(buffer)];
+            for (int i = 0; i < files.length; i++) {
+                files[i] = buffer.getLong();
+            }
+
+            BitSet fileNodes = BitSet.valueOf(files);
+            for (int node = fileNodes.nextSetBit(0); node >= 0; node = fileNodes.nextSetBit(node + 1)) {
+                if (node == ROOT || node >= index.myNodeCount) throw new IOException("Invalid file node " + node);
+                index.myFiles.set(node);
+                for (int parent = node; parent != NONE; parent = index.myParents[parent]) {
+                    index.myFileCounts[parent]++;
+                }
+            }
+
+            int variantCount = readCount(buffer);
+            for (int i = 0; i < variantCount; i++) {
+                int node = buffer.getInt();
+                index.myVariantPaths.put(node, readString(buffer));
+            }
+
+            int collisionCount = readCount(buffer);
+            for (int i = 0; i < collisionCount; i++) {
+                index.myCollisions.add(readString(buffer));
+            }
+            return index;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated path index", e);
+        }
+    }
+
+    private static int readCount(@NotNull ByteBuffer buffer) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining()) throw new IOException("Invalid count " + count);
+        return count;
+    }
+
+    static void writeString(@NotNull DataOutputStream out, @NotNull String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @NotNull
+    static String readString(@NotNull ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readCount(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private FoldedPaths getFoldedPaths() {
+        FoldedPaths foldedPaths = myFoldedPaths;
+        if (foldedPaths == null) {
+            synchronized (this) {
+                foldedPaths = myFoldedPaths;
+                if (foldedPaths == null) {
+                    // parents are added before their children
+                    int[] hashes = new int[myNodeCount];
+                    int[] table = new int[Math.max(16, Integer.highestOneBit(myNodeCount) * 4)];
+                    int mask = table.length - 1;
+                    for (int node = ROOT + 1; node < myNodeCount; node++) {
+                        String segment = mySegments[myNodeSegments[node]];
+                        hashes[node] = foldedPathHash(hashes[myParents[node]], GitCaseFolding.hash(segment, 0, segment.length()));
+
+                        int slot = mix(hashes[node]) & mask;
+                        while (table[slot] != 0) slot = (slot + 1) & mask;
+                        table[slot] = node + 1;
+                    }
+                    foldedPaths = new FoldedPaths(hashes, table);
+                    myFoldedPaths = foldedPaths;
+                }
+            }
+        }
+        return foldedPaths;
+    }
+
+    private static int foldedPathHash(int parentHash, int segmentHash) {
+        return parentHash * 0x9E3779B9 + segmentHash;
+    }
+
+    /**
+     * @return true if path of node equals the path region, ignoring case unless exact
+     */
+    private boolean pathEquals(int node, @NotNull CharSequence path, int start, int end, boolean exact) {
+        int pos = end;
+        for (int parent = node; parent != ROOT; parent = myParents[parent]) {
+            String segment = mySegments[myNodeSegments[parent]];
+            int segmentStart = pos - segment.length();
+            if (segmentStart < start) return false;
+            if (exact ? !regionEquals(path, segmentStart, pos, segment) : !GitCaseFolding.equals(path, segmentStart, pos, segment)) return false;
+
+            pos = segmentStart;
+            if (myParents[parent] != ROOT) {
+                if (pos == start || path.charAt(pos - 1) != '/') return false;
+                pos--;
+            }
+        }
+        return pos == start;
+    }
+
+    private int countFiles(int node, @NotNull Collection<? extends CharSequence> paths, int start) {
+        int count = 0;
+        for (CharSequence path : paths) {
+            int file = path.length() > start ? findFile(path, start) : NONE;
+            if (file != NONE && isAncestor(node, file)) count++;
+        }
+        return count;
+    }
+
+    private boolean isAncestor(int node, int descendant) {
+        for (int parent = descendant; parent != NONE; parent = myParents[parent]) {
+            if (parent == node) return true;
+        }
+        return false;
+    }
+
+    private int findFoldedSegment(@NotNull CharSequence path, int start, int end) {
+        int[] table = myFoldedSegmentTable;
+        int mask = table.length - 1;
+        for (int slot = foldedHash(path, start, end) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int segment = table[slot] - 1;
+            if (myCaseSensitive ? regionEquals(path, start, end, mySegments[segment]) : GitCaseFolding.equals(path, start, end, mySegments[segment])) return segment;
+        }
+        return NONE;
+    }
+
+    private int findSegment(@NotNull CharSequence path, int start, int end) {
+        if (myCaseSensitive) return findFoldedSegment(path, start, end);
+
+        int[] table = mySegmentTable;
+        int mask = table.length - 1;
+        for (int slot = mix(hash(path, start, end)) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int segment = table[slot] - 1;
+            if (regionEquals(path, start, end, mySegments[segment])) return segment;
+        }
+        return NONE;
+    }
+
+    /**
+     * @param segment       segment to add
+     * @param foldedSegment segment it is a case variant of or NONE if it is the first
+     */
+    private int addSegment(@NotNull String segment, int foldedSegment) {
+        if (mySegmentCount == mySegments.length) {
+            int capacity = Math.max(16, mySegmentCount * 2);
+            mySegments = Arrays.copyOf(mySegments, capacity);
+            myFoldedSegments = Arrays.copyOf(myFoldedSegments, capacity);
+        }
+
+        int id = mySegmentCount++;
+        mySegments[id] = segment;
+        myFoldedSegments[id] = foldedSegment == NONE ? id : foldedSegment;
+
+        if (mySegmentCount * 2 > myFoldedSegmentTable.length) {
+            rehashSegments(myFoldedSegmentTable.length * 2);
+        } else {
+            if (foldedSegment == NONE) insertSegment(myFoldedSegmentTable, id, true);
+            if (!myCaseSensitive) insertSegment(mySegmentTable, id, false);
+        }
+        return id;
+    }
+
+    private void rehashSegments(int capacity) {
+        int[] foldedTable = new int[capacity];
+        int[] table = myCaseSensitive ? mySegmentTable : new int[capacity];
+        for (int id = 0; id < mySegmentCount; id++) {
+            if (myFoldedSegments[id] == id) insertSegment(foldedTable, id, true);
+            if (!myCaseSensitive) insertSegment(table, id, false);
+        }
+        myFoldedSegmentTable = foldedTable;
+        mySegmentTable = table;
+    }
+
+    private void insertSegment(int[] table, int segment, boolean folded) {
+        String text = mySegments[segment];
+        int mask = table.length - 1;
+        int slot = (folded ? foldedHash(text, 0, text.length()) : mix(text.hashCode())) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = segment + 1;
+    }
+
+    private int foldedHash(@NotNull CharSequence path, int start, int end) {
+        return mix(myCaseSensitive ? hash(path, start, end) : GitCaseFolding.hash(path, start, end));
+    }
+
+    private static int hash(@NotNull CharSequence path, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + path.charAt(i);
+        }
+        return h;
+    }
+
+    private static boolean regionEquals(@NotNull CharSequence path, int start, int end, @NotNull String segment) {
+        int length = end - start;
+        if (length != segment.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (path.charAt(start + i) != segment.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(@NotNull CharSequence path, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (path.charAt(i) == c) return i;
+        }
+        return end;
+    }
+
+    // names like File1.java ... File99999.java have nearly sequential String hashes, which cluster
+    // in linear probing unless the low bits are mixed with the high ones
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h;
+    }
+
+    private int findChild(int node, int foldedSegment) {
+        int mask = myTable.length - 1;
+        for (int slot = hash(node, foldedSegment) & mask; myTable[slot] != 0; slot = (slot + 1) & mask) {
+            int child = myTable[slot] - 1;
+            if (myParents[child] == node && myFoldedSegments[myNodeSegments[child]] == foldedSegment) return child;
+        }
+        return NONE;
+    }
+
+    private int addNode(int parent, int segment) {
+        if (myNodeCount == myParents.length) {
+            int capacity = Math.max(16, myNodeCount + (myNodeCount >> 1));
+            myParents = Arrays.copyOf(myParents, capacity);
+            myNodeSegments = Arrays.copyOf(myNodeSegments, capacity);
+            myFirstChildren = Arrays.copyOf(myFirstChildren, capacity);
+            myLastChildren = Arrays.copyOf(myLastChildren, capacity);
+            myNextSiblings = Arrays.copyOf(myNextSiblings, capacity);
+            myFileCounts = Arrays.copyOf(myFileCounts, capacity);
+        }
+
+        int node = myNodeCount++;
+        myParents[node] = parent;
+        myNodeSegments[node] = segment;
+        myFirstChildren[node] = NONE;
+        myLastChildren[node] = NONE;
+        myNextSiblings[node] = NONE;
+
+        // keep children in the order added
+        if (myLastChildren[parent] == NONE) {
+            myFirstChildren[parent] = node;
+        } else {
+            myNextSiblings[myLastChildren[parent]] = node;
+        }
+        myLastChildren[parent] = node;
+        if (myFoldedPaths != null) myFoldedPaths = null;
+
+        if (myNodeCount * 2 > myTable.length) {
+            rehash(myTable.length * 2);
+        } else {
+            insert(myTable, node);
+        }
+        return node;
+    }
+
+    private void rehash(int capacity) {
+        int[] table = new int[capacity];
+        for (int node = ROOT + 1; node < myNodeCount; node++) {
+            insert(table, node);
+        }
+        myTable = table;
+    }
+
+    private void insert(int[] table, int node) {
+        int mask = table.length - 1;
+        int slot = hash(myParents[node], myFoldedSegments[myNodeSegments[node]]) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = node + 1;
+    }
+
+    private static int hash(int node, int segment) {
+        return mix(node * 0x9E3779B9 + segment);
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return "GitPathIndex{files=" + size() + ", nodes=" + myNodeCount + ", segments=" + mySegmentCount + "}";
+    }
+}
@@ -0,0 +1,101 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs git from the path as a plain process, for code running outside the IDE. The plugin runs
+ * git through the IDE's git handlers instead.
+ * <p>
+ * Standard error is passed through, standard output is returned as UTF-8 text.
+ */
+final class GitProcess {
+    static final long TIMEOUT_MINUTES = 10;
+
+    private GitProcess() {
+    }
+
+    /**
+     * Run git in a directory
+     *
+     * @param input standard input, null for none
+     *
+     * @return standard output
+     *
+     * @throws IOException if git cannot be started, times out or exits with non-zero code
+     */
+    @NotNull
+    static String git(@NotNull File dir, @Nullable byte[] input, @NotNull String... args) throws IOException {
+        return finish(start(dir, args), input, args);
+    }
+
+    /**
+     * @return NUL separated records of git output, for commands run with {@code -z}
+     */
+    @NotNull
+    static List<String> gitRecords(@NotNull File dir, @NotNull String... args) throws IOException {
+        return records(git(dir, null, args));
+    }
+
+    @NotNull
+    static List<String> records(@NotNull String output) {
+        ArrayList<String> records = new ArrayList<>();
+        GitNulRecordSplitter splitter = new GitNulRecordSplitter(records::add);
+        splitter.append(output);
+        splitter.finish();
+        return records;
+    }
+
+    /**
+     * Start git so it runs while the caller does other work, complete with {@link #finish}
+     */
+    @NotNull
+    static Process start(@NotNull File dir, @NotNull String... args) throws IOException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command).directory(dir).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Pass input to a started git and wait for it to finish
+     *
+     * @param args arguments git was started with, for error messages
+     *
+     * @return standard output
+     */
+    @NotNull
+    static String finish(@NotNull Process process, @Nullable byte[] input, @NotNull String... args) throws IOException {
+        String command = "git " + String.join(" ", args);
+        try {
+            try (OutputStream stdin = new BufferedOutputStream(process.getOutputStream())) {
+                if (input != null) stdin.write(input);
+            }
+
+            byte[] output;
+            try (InputStream stdout = process.getInputStream()) {
+                output = stdout.readAllBytes();
+            }
+
+            if (!process.waitFor(TIMEOUT_MINUTES, TimeUnit.MINUTES)) throw new IOException("Timed out: " + command);
+            if (process.exitValue() != 0) throw new IOException("Failed with exit code " + process.exitValue() + ": " + command);
+            return new String(output, StandardCharsets.UTF_8);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted: " + command, e);
+        } finally {
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Trie of repository root path segments, resolves a path to its innermost repository root in
+ * O(path depth). Memory depends only on the roots added, not on the paths looked up.
+ * <p>
+ * Segments are compared folded with {@link GitCaseFolding}, lookups do not allocate.
+ *
+ * @param <T> type of value stored for each root
+ */
+final class GitRootIndex<T> {
+    private static class Node<T> {
+        final @NotNull String mySegment;
+        @Nullable ArrayList<Node<T>> myChildren;
+        @Nullable T myValue;
+
+        Node(@NotNull String segment) {
+            mySegment = segment;
+        }
+
+        // roots are few, so are children of a node
+        @Nullable Node<T> findChild(@NotNull CharSequence path, int start, int end) {
+            if (myChildren != null) {
+                for (Node<T> child : myChildren) {
+                    if (GitCaseFolding.equals(path, start, end, child.mySegment)) return child;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Node<T> myRoot = new Node<>("");
+    private int mySize;
+
+    /**
+     * @param rootPath path of root directory, '/' separated
+     * @param value    value for root
+     */
+    void put(@NotNull String rootPath, @NotNull T value) {
+        Node<T> node = myRoot;
+        int iMax = rootPath.length();
+        int start = 0;
+
+        while (start < iMax) {
+            int end = rootPath.indexOf('/', start);
+            if (end == -1) end = iMax;
+
+            if (end > start) {
+                Node<T> child = node.findChild(rootPath, start, end);
+                if (child == null) {
+                    child = new Node<>(rootPath.substring(start, end));
+                    if (node.myChildren == null) node.myChildren = new ArrayList<>(1);
+                    node.myChildren.add(child);
+                }
+                node = child;
+            }
+            start = end + 1;
+        }
+
+        if (node.myValue == null) mySize++;
+        node.myValue = value;
+    }
+
+    /**
+     * @param path path of file or directory, '/' separated
+     *
+     * @return value of innermost root containing the path or the path itself, null if none
+     */
+    @Nullable
+    T findInnermost(@NotNull String path) {
+        Node<T> node = myRoot;
+        T value = node.myValue;
+        int iMax = path.length();
+        int start = 0;
+
+        while (start < iMax && node.myChildren != null) {
+            int end = path.indexOf('/', start);
+            if (end == -1) end = iMax;
+
+            if (end > start) {
+                node = node.findChild(path, start, end);
+                if (node == null) break;
+                if (node.myValue != null) value = node.myValue;
+            }
+            start = end + 1;
+        }
+        return value;
+    }
+
+    int size() {
+        return mySize;
+    }
+
+    boolean isEmpty() {
+        return mySize == 0;
+    }
+}
@@ -0,0 +1,137 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates local git repositories from {@link GitFixturePaths}, without network access.
+ * <p>
+ * Index entries are added with {@code git update-index --index-info} pointing at the empty blob, so
+ * they keep their git path case and colliding entries can be added on any file system. Files are
+ * created empty with their file system path case and the index is committed.
+ * <p>
+ * Nested roots are separate repositories in {@code modules/module<n>}, the files are divided
+ * evenly between the roots.
+ */
+final class GitFixtureGenerator {
+    static final String NESTED_ROOT_PREFIX = "modules/module";
+
+    int myFiles = 10000;
+    int myDepth = 6;
+    int myFanOut = 10;
+    int myNestedRoots = 0;
+    double myMismatchRatio = 0.01;
+    double myCollisionRatio = 0;
+    long mySeed = 1;
+    boolean myWriteFiles = true;      // false to create only the index, enough to benchmark reading it
+    boolean myCommit = true;
+
+    /**
+     * Generate the repository and its nested roots
+     *
+     * @param dir directory of repository root, must not exist or be empty
+     *
+     * @return paths of each root, main root first
+     */
+    @NotNull
+    List<GitFixturePaths> generate(@NotNull File dir) throws IOException {
+        ArrayList<GitFixturePaths> roots = new ArrayList<>();
+        int rootFiles = myFiles / (myNestedRoots + 1);
+
+        for (int i = 0; i <= myNestedRoots; i++) {
+            File rootDir = i == 0 ? dir : new File(dir, NESTED_ROOT_PREFIX + i);
+            int files = i == 0 ? myFiles - rootFiles * myNestedRoots : rootFiles;
+            GitFixturePaths paths = new GitFixturePaths(files, myDepth, myFanOut, myMismatchRatio, myCollisionRatio, mySeed + i);
+            generateRoot(rootDir, paths);
+            roots.add(paths);
+        }
+        return roots;
+    }
+
+    private void generateRoot(@NotNull File dir, @NotNull GitFixturePaths paths) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir.getPath());
+
+        GitProcess.git(dir, null, "init", "-q");
+        String emptyBlob = GitProcess.git(dir, new byte[0], "hash-object", "-w", "--stdin").trim();
+
+        ByteArrayOutputStream indexInfo = new ByteArrayOutputStream();
+        for (String path : paths.myGitPaths) {
+            addIndexInfo(indexInfo, emptyBlob, path);
+        }
+        for (String path : paths.myCollisionPaths) {
+            addIndexInfo(indexInfo, emptyBlob, path);
+        }
+        GitProcess.git(dir, indexInfo.toByteArray(), "update-index", "-z", "--index-info");
+
+        if (myWriteFiles) {
+            for (String path : paths.myFilePaths) {
+                File file = new File(dir, path);
+                File parent = file.getParentFile();
+                if (!parent.isDirectory() && !parent.mkdirs()) throw new IOException("Cannot create " + parent.getPath());
+                Files.write(file.toPath(), new byte[0]);
+            }
+        }
+
+        if (myCommit) {
+            GitProcess.git(dir, null, "-c", "user.name=fixture", "-c", "user.email=fixture@localhost", "-c", "commit.gpgsign=false",
+                    "commit", "-q", "--no-verify", "-m", "fixture");
+        }
+    }
+
+    private static void addIndexInfo(@NotNull ByteArrayOutputStream out, @NotNull String blob, @NotNull String path) {
+        byte[] bytes = ("100644 " + blob + "\t" + path + "\0").getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Usage: {@code GitFixtureGenerator <dir> [--files n] [--depth n] [--fan-out n] [--nested-roots n]
+     * [--mismatch-ratio r] [--collision-ratio r] [--seed n] [--index-only] [--no-commit]}
+     */
+    public static void main(String[] args) throws IOException {
+        GitFixtureGenerator generator = new GitFixtureGenerator();
+        File dir = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--files": generator.myFiles = Integer.parseInt(args[++i]); break;
+                case "--depth": generator.myDepth = Integer.parseInt(args[++i]); break;
+                case "--fan-out": generator.myFanOut = Integer.parseInt(args[++i]); break;
+                case "--nested-roots": generator.myNestedRoots = Integer.parseInt(args[++i]); break;
+                case "--mismatch-ratio": generator.myMismatchRatio = Double.parseDouble(args[++i]); break;
+                case "--collision-ratio": generator.myCollisionRatio = Double.parseDouble(args[++i]); break;
+                case "--seed": generator.mySeed = Long.parseLong(args[++i]); break;
+                case "--index-only": generator.myWriteFiles = false; break;
+                case "--no-commit": generator.myCommit = false; break;
+                default:
+                    if (arg.startsWith("--") || dir != null) throw new IllegalArgumentException("Unknown argument " + arg);
+                    dir = new File(arg);
+            }
+        }
+
+        if (dir == null) throw new IllegalArgumentException("Repository directory argument is required");
+        String[] existing = dir.list();
+        if (existing != null && existing.length > 0) throw new IOException("Directory " + dir.getPath() + " is not empty");
+
+        long start = System.nanoTime();
+        List<GitFixturePaths> roots = generator.generate(dir);
+
+        int mismatches = 0;
+        int collisions = 0;
+        for (GitFixturePaths paths : roots) {
+            mismatches += paths.myMismatchCount;
+            collisions += paths.myCollisionPaths.length;
+        }
+
+        System.out.printf("Generated %s: %d files in %d roots, %d mismatched, %d collisions, %d ms%n", dir.getPath(), generator.myFiles, roots.size(), mismatches, collisions,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+}
@@ -0,0 +1,93 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Reproducible paths of a synthetic repository: index paths, file system paths with a given ratio
+ * of case mismatched files and directories, and index entries colliding by case with other entries.
+ * <p>
+ * Whether a file or directory is mismatched depends only on its folded path, so a directory has
+ * the same case for all files under it. The same arguments always give the same paths.
+ */
+final class GitFixturePaths {
+    static final String[] WORDS = { "src", "main", "java", "Resources", "lib", "util", "Core", "api", "model", "View", "docs", "Assets", "build", "Config" };
+
+    final @NotNull String[] myGitPaths;
+    final @NotNull String[] myFilePaths;
+    final @NotNull String[] myCollisionPaths;   // extra index entries differing only by case from a git path
+    final int myMismatchCount;
+
+    /**
+     * @param count          number of files
+     * @param depth          maximum directory depth of a file
+     * @param fanOut         maximum sub-directories of a directory
+     * @param mismatchRatio  fraction of files and directories whose file system case differs
+     * @param collisionRatio fraction of files with an index entry differing only by case
+     * @param seed           random seed
+     */
+    GitFixturePaths(int count, int depth, int fanOut, double mismatchRatio, double collisionRatio, long seed) {
+        Random random = new Random(seed);
+        myGitPaths = new String[count];
+        myFilePaths = new String[count];
+
+        ArrayList<String> collisions = new ArrayList<>();
+        int mismatches = 0;
+        StringBuilder gitPath = new StringBuilder();
+        StringBuilder filePath = new StringBuilder();
+
+        for (int i = 0; i < count; i++) {
+            gitPath.setLength(0);
+            filePath.setLength(0);
+
+            int levels = random.nextInt(depth + 1);
+            for (int level = 0; level <= levels; level++) {
+                if (level > 0) {
+                    gitPath.append('/');
+                    filePath.append('/');
+                }
+
+                String segment;
+                if (level == levels) {
+                    segment = "File" + i + ".java";
+                } else {
+                    int k = random.nextInt(Math.max(1, fanOut));
+                    segment = WORDS[k % WORDS.length] + (k < WORDS.length ? "" : k / WORDS.length);
+                }
+
+                gitPath.append(segment);
+                filePath.append(isSelected(gitPath, mismatchRatio, 0) ? flipCase(segment) : segment);
+            }
+
+            myGitPaths[i] = gitPath.toString();
+            myFilePaths[i] = filePath.toString();
+            if (!myGitPaths[i].equals(myFilePaths[i])) mismatches++;
+
+            if (isSelected(gitPath, collisionRatio, 0x9E3779B9)) {
+                int nameStart = gitPath.lastIndexOf("/") + 1;
+                collisions.add(gitPath.substring(0, nameStart) + flipCase(gitPath.substring(nameStart)));
+            }
+        }
+
+        myCollisionPaths = collisions.toArray(new String[0]);
+        myMismatchCount = mismatches;
+    }
+
+    private static boolean isSelected(@NotNull CharSequence path, double ratio, int salt) {
+        if (ratio <= 0) return false;
+        int h = GitCaseFolding.hash(path, 0, path.length()) ^ salt;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return (h & 0xFFFFFF) < ratio * 0x1000000;
+    }
+
+    @NotNull
+    static String flipCase(@NotNull String segment) {
+        char c = segment.charAt(0);
+        char flipped = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+        return flipped + segment.substring(1);
+    }
+}
@@ -0,0 +1,132 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Reproducible in-memory repository for benchmarks, {@link GitFixturePaths} with a file tree of
+ * the file system paths.
+ */
+final class BenchmarkRepository {
+    static final String REPO_PREFIX = "/repo/";
+    static final int FAN_OUT = 10;
+
+    final String[] myGitPaths;
+    final String[] myFilePaths;
+    final int myMismatchCount;
+
+    static final class MemoryFile {
+        final @NotNull String myName;
+        final @NotNull String myPath;
+        final @Nullable ArrayList<MemoryFile> myChildren;
+
+        MemoryFile(@NotNull String name, @NotNull String path, boolean directory) {
+            myName = name;
+            myPath = path;
+            myChildren = directory ? new ArrayList<>() : null;
+        }
+    }
+
+    static final class MemoryFileTree implements GitCaseMismatchDetector.FileTree<MemoryFile> {
+        static final MemoryFileTree INSTANCE = new MemoryFileTree();
+
+        @Override
+        public @NotNull String getName(@NotNull MemoryFile file) {
+            return file.myName;
+        }
+
+        @Override
+        public @NotNull String getPath(@NotNull MemoryFile file) {
+            return file.myPath;
+        }
+
+        @Override
+        public boolean isDirectory(@NotNull MemoryFile file) {
+            return file.myChildren != null;
+        }
+
+        @Override
+        public @Nullable List<MemoryFile> getChildren(@NotNull MemoryFile dir) {
+            return dir.myChildren;
+        }
+    }
+
+    /**
+     * @param count         number of files
+     * @param depth         maximum directory depth of a file
+     * @param mismatchRatio fraction of files and directories whose file system case differs
+     * @param seed          random seed, same arguments give the same repository
+     */
+    BenchmarkRepository(int count, int depth, double mismatchRatio, long seed) {
+        GitFixturePaths paths = new GitFixturePaths(count, depth, FAN_OUT, mismatchRatio, 0, seed);
+        myGitPaths = paths.myGitPaths;
+        myFilePaths = paths.myFilePaths;
+        myMismatchCount = paths.myMismatchCount;
+    }
+
+    /**
+     * @return NUL terminated paths, as output by {@code git ls-files -z}, split into chunks
+     */
+    @NotNull
+    String[] getLsFilesOutput(int chunkSize) {
+        StringBuilder sb = new StringBuilder();
+        for (String path : myGitPaths) {
+            sb.append(path).append('\0');
+        }
+
+        ArrayList<String> chunks = new ArrayList<>();
+        for (int i = 0; i < sb.length(); i += chunkSize) {
+            chunks.add(sb.substring(i, Math.min(sb.length(), i + chunkSize)));
+        }
+        return chunks.toArray(new String[0]);
+    }
+
+    @NotNull
+    GitPathIndex createIndex(boolean caseSensitive) {
+        GitPathIndex index = new GitPathIndex(caseSensitive);
+        for (String path : myGitPaths) {
+            index.add(path);
+        }
+        index.trimToSize();
+        return index;
+    }
+
+    /**
+     * @return root of a file tree of file system paths, paths start with {@link #REPO_PREFIX}
+     */
+    @NotNull
+    MemoryFile createFileTree() {
+        MemoryFile root = new MemoryFile("repo", REPO_PREFIX.substring(0, REPO_PREFIX.length() - 1), true);
+        HashMap<String, MemoryFile> dirs = new HashMap<>();
+        dirs.put("", root);
+
+        for (String path : myFilePaths) {
+            MemoryFile parent = root;
+            int start = 0;
+            while (true) {
+                int end = path.indexOf('/', start);
+                if (end == -1) {
+                    //noinspection ConstantConditions
+                    parent.myChildren.add(new MemoryFile(path.substring(start), REPO_PREFIX + path, false));
+                    break;
+                }
+
+                String dirPath = path.substring(0, end);
+                MemoryFile dir = dirs.get(dirPath);
+                if (dir == null) {
+                    dir = new MemoryFile(path.substring(start, end), REPO_PREFIX + dirPath, true);
+                    dirs.put(dirPath, dir);
+                    //noinspection ConstantConditions
+                    parent.myChildren.add(dir);
+                }
+                parent = dir;
+                start = end + 1;
+            }
+        }
+        return root;
+    }
+}
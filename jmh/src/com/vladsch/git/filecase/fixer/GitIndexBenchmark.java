@@ -0,0 +1,137 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.vladsch.git.filecase.fixer.BenchmarkRepository.MemoryFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Index load, lookup and mismatch scan over repositories of 10k to 1M paths.
+ * <p>
+ * Each operation covers all paths of the repository, times are per repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class GitIndexBenchmark {
+    static final long SEED = 0x5EED;
+    static final int LS_FILES_CHUNK_SIZE = 8192;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int paths;
+
+    @Param({ "4", "12" })
+    public int depth;
+
+    @Param({ "0", "0.01" })
+    public double mismatchRatio;
+
+    BenchmarkRepository myRepository;
+    String[] myLsFilesOutput;
+    GitPathIndex myIndex;
+    GitRootIndex<GitPathIndex> myRootIndex;
+    String[] myFullPaths;
+    MemoryFile myFileTree;
+    String[] myMismatchedGitPaths;
+    String[] myMismatchedFilePaths;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        myRepository = new BenchmarkRepository(paths, depth, mismatchRatio, SEED);
+        myLsFilesOutput = myRepository.getLsFilesOutput(LS_FILES_CHUNK_SIZE);
+        myIndex = myRepository.createIndex(false);
+
+        // nested roots, lookups go through the root trie as in the plugin
+        myRootIndex = new GitRootIndex<>();
+        myRootIndex.put(BenchmarkRepository.REPO_PREFIX, myIndex);
+        myRootIndex.put(BenchmarkRepository.REPO_PREFIX + "lib/vendor/", new GitPathIndex(false));
+
+        myFullPaths = new String[paths];
+        for (int i = 0; i < paths; i++) {
+            myFullPaths[i] = BenchmarkRepository.REPO_PREFIX + myRepository.myFilePaths[i];
+        }
+
+        myFileTree = myRepository.createFileTree();
+
+        ArrayList<String> gitPaths = new ArrayList<>();
+        ArrayList<String> filePaths = new ArrayList<>();
+        for (int i = 0; i < paths; i++) {
+            if (!myRepository.myGitPaths[i].equals(myRepository.myFilePaths[i])) {
+                gitPaths.add(myRepository.myGitPaths[i]);
+                filePaths.add(myRepository.myFilePaths[i]);
+            }
+        }
+        myMismatchedGitPaths = gitPaths.toArray(new String[0]);
+        myMismatchedFilePaths = filePaths.toArray(new String[0]);
+    }
+
+    /**
+     * Split {@code git ls-files -z} output into paths
+     */
+    @Benchmark
+    public void parseLsFiles(Blackhole blackhole) {
+        GitNulRecordSplitter splitter = new GitNulRecordSplitter(blackhole::consume);
+        for (String chunk : myLsFilesOutput) {
+            splitter.append(chunk);
+        }
+        splitter.finish();
+    }
+
+    /**
+     * Build the path index from index paths, as done when loading a repository
+     */
+    @Benchmark
+    public GitPathIndex buildIndex() {
+        return myRepository.createIndex(false);
+    }
+
+    /**
+     * Resolve each file's root and index entry, as done for each changed file
+     */
+    @Benchmark
+    public int lookupFiles() {
+        int found = 0;
+        for (String fullPath : myFullPaths) {
+            GitPathIndex index = myRootIndex.findInnermost(fullPath);
+            if (index != null && index.findFile(fullPath, BenchmarkRepository.REPO_PREFIX.length()) != GitPathIndex.NONE) found++;
+        }
+        return found;
+    }
+
+    /**
+     * Match all index paths to the file tree, as done to check unmodified files
+     */
+    @Benchmark
+    public int scanUnmodified() {
+        int[] mismatches = new int[1];
+        GitCaseMismatchDetector<MemoryFile> detector = new GitCaseMismatchDetector<>(BenchmarkRepository.MemoryFileTree.INSTANCE, myIndex, BenchmarkRepository.REPO_PREFIX.length());
+        detector.findMismatches(myFileTree, (file, gitPath, filePath) -> mismatches[0]++);
+        return mismatches[0];
+    }
+
+    /**
+     * Group mismatches by their first mismatched directory, as done when showing mismatches
+     */
+    @Benchmark
+    public void shortestCaseMismatchPath(Blackhole blackhole) {
+        for (int i = 0; i < myMismatchedGitPaths.length; i++) {
+            blackhole.consume(GitCaseRenamePlanner.shortestMismatchedDirectory(myMismatchedGitPaths[i], myMismatchedFilePaths[i]));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Loading a repository's paths from a real {@code .git/index} file, directly and from its snapshot.
+ * Needs git on the path to generate the fixture repository.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class GitIndexReaderBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int paths;
+
+    @Param({ "6" })
+    public int depth;
+
+    File myRepoDir;
+    File myIndexFile;
+    GitIndexSnapshot mySnapshot;
+    GitIndexStamp myStamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        myRepoDir = Files.createTempDirectory("git-file-case-fixture").toFile();
+
+        GitFixtureGenerator generator = new GitFixtureGenerator();
+        generator.myFiles = paths;
+        generator.myDepth = depth;
+        generator.myCollisionRatio = 0.001;
+        generator.myWriteFiles = false;
+        generator.myCommit = false;
+        generator.generate(myRepoDir);
+
+        myIndexFile = GitIndexReader.findIndexFile(myRepoDir);
+        if (myIndexFile == null) throw new IOException("No index in " + myRepoDir.getPath());
+
+        myStamp = GitIndexStamp.of(myIndexFile);
+        if (myStamp == null) throw new IOException("No stamp for " + myIndexFile.getPath());
+
+        mySnapshot = new GitIndexSnapshot(new File(myRepoDir, "snapshot.index"));
+        mySnapshot.save(myRepoDir.getPath(), false, myStamp, readIndex());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(myRepoDir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * Read the index file into a path index, as done when a repository's index changed
+     */
+    @Benchmark
+    public GitPathIndex readIndex() throws IOException {
+        GitPathIndex index = new GitPathIndex(false);
+        GitIndexReader.readPaths(myIndexFile, index::add);
+        index.trimToSize();
+        return index;
+    }
+
+    /**
+     * Validate the snapshot stamp, as done for each repository after a restart
+     */
+    @Benchmark
+    public boolean validateSnapshot() {
+        return mySnapshot.isValid(myRepoDir.getPath(), false, GitIndexStamp.of(myIndexFile));
+    }
+
+    /**
+     * Read the path index from its snapshot, as done on first use after a restart
+     */
+    @Benchmark
+    public GitPathIndex loadSnapshot() throws IOException {
+        return mySnapshot.load(myRepoDir.getPath(), false, myStamp);
+    }
+}
@@ -8,6 +8,7 @@ import com.intellij.openapi.progress.Task.Modal;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.JBCheckboxMenuItem;
 import com.intellij.openapi.ui.JBPopupMenu;
+import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.CheckinProjectPanel;
@@ -38,7 +39,9 @@ import java.util.Objects;
 
 import static com.intellij.CommonBundle.getCancelButtonText;
 import static com.intellij.openapi.ui.Messages.NO;
+import static com.intellij.openapi.ui.Messages.OK;
 import static com.intellij.openapi.ui.Messages.YES;
+import static com.intellij.openapi.ui.Messages.showOkCancelDialog;
 import static com.intellij.openapi.ui.Messages.showYesNoCancelDialog;
 import static com.intellij.util.ui.UIUtil.getWarningIcon;
 import static com.vladsch.git.filecase.fixer.GitFixerConfiguration.FIX_PROMPT;
@@ -66,8 +69,7 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
 
         Collection<Change> changes = myCheckinProjectPanel.getSelectedChanges();
 
-        // clear caches, just in case, so we get a fresh index list from git
-        GitFileFixerProjectRoots.getInstance(myProject).clearCaches();
+        // with up to date background results only changed files need checking
         GitFileCaseFixerHandlerWorker worker = new GitFileCaseFixerHandlerWorker(myProject, changes, myConfiguration.FIXER_ACTION);
 
         Ref<Boolean> completed = Ref.create(Boolean.FALSE);
@@ -85,65 +87,90 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
         });
 
         if (completed.get() && (worker.getMismatchedUnmodifiedFiles().isEmpty() && worker.getMismatchedModifiedFiles().isEmpty() &&
-                worker.getMismatchedUnmodifiedFiles().isEmpty())) return ReturnResult.COMMIT;
+                worker.getIndexCollisions().isEmpty())) return ReturnResult.COMMIT;
         if (!completed.get()) return ReturnResult.CANCEL;
         return showResults(worker, executor);
     }
 
     private ReturnResult showResults(GitFileCaseFixerHandlerWorker worker, CommitExecutor executor) {
-        if (myConfiguration.FIXER_ACTION == FIX_PROMPT) {
+        // collisions are not fixed by any fixer action, they are always left for review
+        boolean prompt = myConfiguration.FIXER_ACTION == FIX_PROMPT;
+        if (prompt || !worker.getIndexCollisions().isEmpty()) {
             String commitButtonText = executor != null ? executor.getActionText() : myCheckinProjectPanel.getCommitActionName();
             commitButtonText = StringUtil.trimEnd(commitButtonText, "...");
 
-            String text = createDialogMessage(worker);
-            boolean mismatchesFound = worker.getMismatchedUnmodifiedFiles().size() + worker.getMismatchedModifiedFiles().size() > 0;
+            String text = createDialogMessage(worker, prompt);
+            int mismatches = prompt ? worker.getMismatchedUnmodifiedFiles().size() + worker.getMismatchedModifiedFiles().size() : 0;
+            boolean mismatchesFound = mismatches + worker.getIndexCollisions().size() > 0;
             String title = Bundle.message("git.filecase.fixer.mismatches.found.title");
             if (mismatchesFound) {
-                return askReviewOrCommit(worker, commitButtonText, text, title);
+                return askReviewOrCommit(worker, prompt, commitButtonText, text, title);
             } else if (worker.getMismatchedFixedFiles().size() > 0) {
                 // TODO: show balloon with status
             }
         }
-        GitFileFixerProjectRoots.getInstance(myProject).clearCaches();
         return ReturnResult.COMMIT;
     }
 
     @NotNull
     private ReturnResult askReviewOrCommit(
             @NotNull GitFileCaseFixerHandlerWorker worker,
+            boolean withMismatches,
             @NotNull String commitButton,
             @NotNull String text,
             @NotNull String title
     ) {
         String yesButton = Bundle.message("git.filecase.fixer.in.new.review.button");
-        switch (showYesNoCancelDialog(myProject, text, title, yesButton, commitButton, getCancelButtonText(), getWarningIcon())) {
+        GitFileCaseEvents.Dialog event = new GitFileCaseEvents.Dialog();
+        event.begin();
+        int answer;
+        if (!worker.getNewPathCollisions().isEmpty()) {
+            // commit would add the collision, only review or cancel are offered
+            text = Bundle.message("git.filecase.fixer.handler.new.path.collisions", worker.getNewPathCollisions().size());
+            answer = showOkCancelDialog(myProject, text, title, yesButton, getCancelButtonText(), getWarningIcon()) == OK ? YES : Messages.CANCEL;
+        } else {
+            answer = showYesNoCancelDialog(myProject, text, title, yesButton, commitButton, getCancelButtonText(), getWarningIcon());
+        }
+        event.end(GitFileCaseEvents.DIALOG_COMMIT_PROMPT, worker.getIndexCollisions().size() + worker.getMismatchedModifiedFiles().size() + worker.getMismatchedUnmodifiedFiles().size(),
+                answer == YES ? "review" : answer == NO ? "commit" : "cancel");
+
+        switch (answer) {
             case YES:
-                showFixes(worker);
+                showFixes(worker, withMismatches);
                 return ReturnResult.CLOSE_WINDOW;
             case NO:
-                GitFileFixerProjectRoots.getInstance(myProject).clearCaches();
                 return ReturnResult.COMMIT;
         }
-        GitFileFixerProjectRoots.getInstance(myProject).clearCaches();
         return ReturnResult.CANCEL;
     }
 
-    private void showFixes(GitFileCaseFixerHandlerWorker worker) {
-        // after collecting results for display, clear caches
-        ArrayList<GitRepoFile> mismatchedFiles = new ArrayList<>(worker.getMismatchedModifiedFiles());
-        mismatchedFiles.addAll(worker.getMismatchedUnmodifiedFiles());
+    private void showFixes(GitFileCaseFixerHandlerWorker worker, boolean withMismatches) {
+        ArrayList<GitRepoFile> mismatchedFiles = new ArrayList<>(worker.getIndexCollisions());
+        if (withMismatches) {
+            mismatchedFiles.addAll(worker.getMismatchedModifiedFiles());
+            mismatchedFiles.addAll(worker.getMismatchedUnmodifiedFiles());
+        }
         GitFileCaseShowMismatchesDialog dialog = new GitFileCaseShowMismatchesDialog(Objects.requireNonNull(WindowManager.getInstance().findVisibleFrame()).getRootPane(), mismatchedFiles);
+        GitFileCaseEvents.Dialog event = new GitFileCaseEvents.Dialog();
+        event.begin();
         boolean result = dialog.showAndGet();
+        event.end(GitFileCaseEvents.DIALOG_MISMATCHES, mismatchedFiles.size(), result ? "fix" : "cancel");
         if (result) {
             dialog.applyFixes();
         }
-        GitFileFixerProjectRoots.getInstance(myProject).clearCaches();
     }
 
-    private static String createDialogMessage(GitFileCaseFixerHandlerWorker worker) {
-        int unmodified = worker.getMismatchedUnmodifiedFiles().size();
-        int changed = worker.getMismatchedModifiedFiles().size();
-        if (changed == 0) {
+    private static String createDialogMessage(GitFileCaseFixerHandlerWorker worker, boolean withMismatches) {
+        int unmodified = withMismatches ? worker.getMismatchedUnmodifiedFiles().size() : 0;
+        int changed = withMismatches ? worker.getMismatchedModifiedFiles().size() : 0;
+        int collisions = worker.getIndexCollisions().size();
+        if (collisions > 0) {
+            if (unmodified + changed == 0) {
+                return Bundle.message("git.filecase.fixer.handler.only.collisions", collisions);
+            } else {
+                return Bundle.message("git.filecase.fixer.handler.mismatches.collisions", unmodified + changed, collisions);
+            }
+        } else if (changed == 0) {
             return Bundle.message("git.filecase.fixer.handler.only.unmodified", unmodified);
         } else if (unmodified == 0) {
             return Bundle.message("git.filecase.fixer.handler.only.modified", changed);
@@ -200,7 +227,14 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
             contentPanel.add(new Spacer(), new GridConstraints(0, 5, 1, 1, GridConstraints.ANCHOR_EAST, GridConstraints.FILL_HORIZONTAL, 0, 0, null, null, null));
 
             Runnable updateCheckBoxText = () -> {
-                String fileType = myConfiguration.CHECK_UNMODIFIED_FILES ? Bundle.message("git.filecase.check.type.unmodified") : Bundle.message("git.filecase.check.type.modified");
+                final String fileType;
+                if (!myConfiguration.CHECK_UNMODIFIED_FILES) {
+                    fileType = Bundle.message("git.filecase.check.type.modified");
+                } else if (myConfiguration.CHECK_TOUCHED_DIRECTORIES) {
+                    fileType = Bundle.message("git.filecase.check.type.touched");
+                } else {
+                    fileType = Bundle.message("git.filecase.check.type.unmodified");
+                }
 
                 fileTypeLink.setText(fileType);
 
@@ -221,14 +255,22 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
             fileTypeLink.setListener((aSource, aLinkData) -> {
                 JBPopupMenu myPopupMenuActions = new JBPopupMenu();
                 final JBCheckboxMenuItem checkUnmodifiedFiles = new JBCheckboxMenuItem(Bundle.message("git.filecase.check.unmodified"));
+                final JBCheckboxMenuItem checkTouchedFiles = new JBCheckboxMenuItem(Bundle.message("git.filecase.check.touched"));
                 final JBCheckboxMenuItem checkModifiedFiles = new JBCheckboxMenuItem(Bundle.message("git.filecase.check.modified"));
 
                 myPopupMenuActions.add(checkUnmodifiedFiles);
+                myPopupMenuActions.add(checkTouchedFiles);
                 myPopupMenuActions.add(checkModifiedFiles);
 
+                final JBCheckboxMenuItem checkCaseCollisions = new JBCheckboxMenuItem(Bundle.message("git.filecase.check.collisions"));
+                myPopupMenuActions.addSeparator();
+                myPopupMenuActions.add(checkCaseCollisions);
+
                 Runnable updateCheckedState = () -> {
                     updateCheckBoxText.run();
-                    checkUnmodifiedFiles.setSelected(myConfiguration.CHECK_UNMODIFIED_FILES);
+                    checkCaseCollisions.setSelected(myConfiguration.CHECK_CASE_COLLISIONS);
+                    checkUnmodifiedFiles.setSelected(myConfiguration.CHECK_UNMODIFIED_FILES && !myConfiguration.CHECK_TOUCHED_DIRECTORIES);
+                    checkTouchedFiles.setSelected(myConfiguration.CHECK_UNMODIFIED_FILES && myConfiguration.CHECK_TOUCHED_DIRECTORIES);
                     checkModifiedFiles.setSelected(!myConfiguration.CHECK_UNMODIFIED_FILES);
                 };
 
@@ -236,6 +278,13 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
 
                 checkUnmodifiedFiles.addActionListener(e1 -> {
                     myConfiguration.CHECK_UNMODIFIED_FILES = true;
+                    myConfiguration.CHECK_TOUCHED_DIRECTORIES = false;
+                    updateCheckedState.run();
+                });
+
+                checkTouchedFiles.addActionListener(e1 -> {
+                    myConfiguration.CHECK_UNMODIFIED_FILES = true;
+                    myConfiguration.CHECK_TOUCHED_DIRECTORIES = true;
                     updateCheckedState.run();
                 });
 
@@ -244,6 +293,11 @@ public class GitFileCaseFixerCheckinHandler extends CheckinHandler {
                     updateCheckedState.run();
                 });
 
+                checkCaseCollisions.addActionListener(e1 -> {
+                    myConfiguration.CHECK_CASE_COLLISIONS = !myConfiguration.CHECK_CASE_COLLISIONS;
+                    updateCheckedState.run();
+                });
+
                 myPopupMenuActions.show(fileTypeLink, 10, fileTypeLink.getWidth());
             }, null);
 
@@ -25,6 +25,8 @@ public class GitFileCaseFixerHandlerWorker {
     private final List<GitRepoFile> myMismatchedUnmodifiedFiles = new ArrayList<>();
     private final List<GitRepoFile> myMismatchedModifiedFiles = new ArrayList<>();
     private final List<GitRepoFile> myMismatchedFixedFiles = new ArrayList<>();
+    private final List<GitRepoFile> myIndexCollisions = new ArrayList<>();
+    private final List<GitRepoFile> myNewPathCollisions = new ArrayList<>();
 
     public GitFileCaseFixerHandlerWorker(@NotNull Project project, @NotNull Collection<Change> changes, int fixerAction) {
         myProject = project;
@@ -34,12 +36,38 @@ public class GitFileCaseFixerHandlerWorker {
 
     public void execute() {
         GitFileFixerProjectRoots projectRoots = GitFileFixerProjectRoots.getInstance(myProject);
+        projectRoots.updateGitRepoFilesList();
+        GitFixerConfiguration configuration = getInstance(myProject);
         HashSet<String> checkedFiles = new HashSet<>();
+        ArrayList<String> changedPaths = new ArrayList<>();
+
+        GitFileCaseEvents.RootResolution event = new GitFileCaseEvents.RootResolution();
+        event.begin();
+
+        // files moved away in this commit, a case rename of a directory moves all its files
+        HashSet<String> movedPaths = new HashSet<>();
+        for (Change change : myChanges) {
+            if (change.getBeforeRevision() != null) movedPaths.add(change.getBeforeRevision().getFile().getPath());
+        }
+        for (Change change : myChanges) {
+            if (change.getAfterRevision() != null) movedPaths.remove(change.getAfterRevision().getFile().getPath());
+        }
 
         for (Change change : myChanges) {
             ProgressManager.checkCanceled();
+            String beforePath = change.getBeforeRevision() == null ? null : change.getBeforeRevision().getFile().getPath();
+            if (beforePath != null) changedPaths.add(beforePath);
             if (change.getAfterRevision() == null) continue;
             FilePath afterFilePath = change.getAfterRevision().getFile();
+            changedPaths.add(afterFilePath.getPath());
+
+            // new and moved paths on case-sensitive file systems are looked up in the folded index
+            if (configuration.CHECK_CASE_COLLISIONS && !afterFilePath.isDirectory() && !afterFilePath.getPath().equals(beforePath)) {
+                GitRepoFile collision = projectRoots.getCaseCollision(afterFilePath.getPath(), movedPaths);
+                if (collision != null) {
+                    myNewPathCollisions.add(collision);
+                }
+            }
 
             final VirtualFile afterFile = getFileWithRefresh(afterFilePath);
             if (afterFile != null && !afterFile.isDirectory()) {
@@ -53,17 +81,41 @@ public class GitFileCaseFixerHandlerWorker {
             }
         }
 
+        event.end();
+        if (event.shouldCommit()) {
+            event.repositories = projectRoots.initializeGitRepoFilesList().getRepoFilesList().size();
+            event.changes = myChanges.size();
+            event.mismatches = myMismatchedModifiedFiles.size();
+            event.collisions = myNewPathCollisions.size();
+            event.commit();
+        }
+
+        GitIndexScope scope = configuration.CHECK_UNMODIFIED_FILES && configuration.CHECK_TOUCHED_DIRECTORIES
+                ? projectRoots.getTouchedDirectoryScope(changedPaths, configuration.TOUCHED_DIRECTORY_RADIUS) : null;
+
         // now check all other files under VCS
-        if (getInstance(myProject).CHECK_UNMODIFIED_FILES) {
-            projectRoots.visitAllIndexFiles((repoFile) -> {
-                if (!checkedFiles.contains(repoFile.fullPath)) {
-                    if (!repoFile.gitPath.equals(repoFile.filePath)) {
-                        myMismatchedUnmodifiedFiles.add(repoFile);
-                    }
+        if (configuration.CHECK_UNMODIFIED_FILES) {
+            List<GitRepoFile> indexMismatches = GitFileCaseMismatchService.getInstance(myProject).getUpToDateMismatches();
+            if (indexMismatches == null) {
+                indexMismatches = scope == null ? projectRoots.findMismatchedIndexFiles() : projectRoots.findMismatchedIndexFiles(scope);
+            }
+
+            for (GitRepoFile repoFile : indexMismatches) {
+                if (!checkedFiles.contains(repoFile.fullPath) && (scope == null || scope.contains(repoFile))) {
+                    myMismatchedUnmodifiedFiles.add(repoFile);
                 }
-            });
+            }
         }
 
+        // index entries differing only by case from another entry are found when loading the index
+        for (GitRepoFile repoFile : projectRoots.findIndexCollisions()) {
+            if (configuration.CHECK_UNMODIFIED_FILES ? scope == null || scope.contains(repoFile) : checkedFiles.contains(repoFile.fullPath)) {
+                myIndexCollisions.add(repoFile);
+            }
+        }
+        myIndexCollisions.addAll(myNewPathCollisions);
+
+        // collisions are never fixed here, a person picks which of the entries to drop
         if (myFixerAction != GitFixerConfiguration.FIX_PROMPT && (!myMismatchedUnmodifiedFiles.isEmpty() || !myMismatchedModifiedFiles.isEmpty())) {
             myMismatchedFixedFiles.addAll(myMismatchedModifiedFiles);
             myMismatchedFixedFiles.addAll(myMismatchedUnmodifiedFiles);
@@ -99,4 +151,16 @@ public class GitFileCaseFixerHandlerWorker {
     public List<GitRepoFile> getMismatchedModifiedFiles() {
         return myMismatchedModifiedFiles;
     }
+
+    public List<GitRepoFile> getIndexCollisions() {
+        return myIndexCollisions;
+    }
+
+    /**
+     * @return collisions of new and moved paths with index entries, included in index collisions,
+     *         committing them adds the collision to the repository
+     */
+    public List<GitRepoFile> getNewPathCollisions() {
+        return myNewPathCollisions;
+    }
 }
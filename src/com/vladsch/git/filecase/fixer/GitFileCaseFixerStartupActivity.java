@@ -0,0 +1,13 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import org.jetbrains.annotations.NotNull;
+
+public class GitFileCaseFixerStartupActivity implements StartupActivity, DumbAware {
+    @Override
+    public void runActivity(@NotNull Project project) {
+        GitFileCaseMismatchService.getInstance(project).scheduleUpdate();
+    }
+}
@@ -0,0 +1,303 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.ProjectLevelVcsManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileContentChangeEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.util.Alarm;
+import com.intellij.util.messages.MessageBusConnection;
+import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFile;
+import git4idea.repo.GitRepository;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps mismatches of all index files up to date in the background, so the commit check only
+ * needs to check the changed files.
+ * <p>
+ * Repository and VCS configuration changes invalidate the result and schedule a full scan after a
+ * delay, cancelling a scan in progress. Files created, copied, moved or renamed are checked
+ * against the loaded index as they change and update the result in place, directories are walked
+ * only where they have index entries.
+ */
+public class GitFileCaseMismatchService implements Disposable {
+    static final int UPDATE_DELAY_MS = 1000;
+    static final int PENDING_CHANGES_DELAY_MS = 300;
+    static final int MAX_PENDING_CHANGES = 1000;
+
+    private final Project myProject;
+    private final Alarm myUpdateAlarm;
+    private final AtomicLong myModificationCount = new AtomicLong();
+    private volatile @Nullable ProgressIndicator myUpdateIndicator;
+
+    // guarded by this
+    private @Nullable LinkedHashMap<String, GitRepoFile> myMismatches;  // full path to mismatch, null if not valid
+    private long myMismatchesModificationCount = -1;
+    private @Nullable List<GitIndexStamp> myMismatchesStamps;           // stamps of indices mismatches were computed from
+    private ArrayList<VirtualFile> myPendingFiles = new ArrayList<>();
+    private ArrayList<String> myPendingRemovedPaths = new ArrayList<>();
+
+    @NotNull
+    public static GitFileCaseMismatchService getInstance(@NotNull Project project) {
+        return project.getService(GitFileCaseMismatchService.class);
+    }
+
+    public GitFileCaseMismatchService(@NotNull Project project) {
+        myProject = project;
+        myUpdateAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, this);
+
+        //noinspection ThisEscapedInObjectConstruction
+        MessageBusConnection messageBus = project.getMessageBus().connect(this);
+        messageBus.subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, this::scheduleUpdate);
+        messageBus.subscribe(GitRepository.GIT_REPO_CHANGE, repository -> scheduleUpdate());
+        messageBus.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            @Override
+            public void after(@NotNull List<? extends VFileEvent> events) {
+                fileStructureChanged(events);
+            }
+        });
+    }
+
+    static boolean isStructureChange(@NotNull VFileEvent event) {
+        if (event instanceof VFileContentChangeEvent) return false;
+        if (event instanceof VFilePropertyChangeEvent && !((VFilePropertyChangeEvent) event).isRename()) return false;
+        return !event.getPath().contains("/.git/");
+    }
+
+    boolean isEnabled() {
+        GitFixerConfiguration configuration = GitFixerConfiguration.getInstance(myProject);
+        // touched directories are checked on commit, cheaper than keeping all files up to date
+        return configuration.CHECK_FILE_CASE && configuration.CHECK_UNMODIFIED_FILES && !configuration.CHECK_TOUCHED_DIRECTORIES;
+    }
+
+    /**
+     * Invalidate current result and schedule a new scan
+     */
+    void scheduleUpdate() {
+        myModificationCount.incrementAndGet();
+
+        ProgressIndicator indicator = myUpdateIndicator;
+        if (indicator != null) {
+            indicator.cancel();
+        }
+
+        if (isEnabled() && !myProject.isDisposed()) {
+            myUpdateAlarm.cancelAllRequests();
+            myUpdateAlarm.addRequest(this::update, UPDATE_DELAY_MS);
+        }
+    }
+
+    void update() {
+        if (myProject.isDisposed() || !isEnabled()) return;
+
+        long modificationCount = myModificationCount.get();
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        myUpdateIndicator = indicator;
+
+        try {
+            ProgressManager.getInstance().runProcess(() -> {
+                GitFileFixerProjectRoots projectRoots = GitFileFixerProjectRoots.getInstance(myProject);
+                projectRoots.updateGitRepoFilesList();
+                List<GitIndexStamp> stamps = projectRoots.getLoadedStamps();
+                List<GitRepoFile> mismatches = projectRoots.findMismatchedIndexFiles();
+
+                synchronized (this) {
+                    if (modificationCount == myModificationCount.get()) {
+                        myMismatches = new LinkedHashMap<>();
+                        for (GitRepoFile repoFile : mismatches) {
+                            myMismatches.put(repoFile.fullPath, repoFile);
+                        }
+                        myMismatchesModificationCount = modificationCount;
+                        myMismatchesStamps = stamps;
+                    }
+                }
+            }, indicator);
+        } catch (ProcessCanceledException ignored) {
+            // invalidated while scanning, a new update is scheduled
+            return;
+        } finally {
+            if (myUpdateIndicator == indicator) {
+                myUpdateIndicator = null;
+            }
+        }
+
+        // changes made while scanning may not be reflected in the result, checking again is harmless
+        processPendingChanges();
+    }
+
+    void fileStructureChanged(@NotNull List<? extends VFileEvent> events) {
+        ArrayList<VirtualFile> files = new ArrayList<>();
+        ArrayList<String> removedPaths = new ArrayList<>();
+
+        for (VFileEvent event : events) {
+            if (!isStructureChange(event)) continue;
+
+            VirtualFile file = event.getFile();
+            if (event instanceof VFileDeleteEvent) {
+                removedPaths.add(event.getPath());
+                file = null;
+            } else if (event instanceof VFileMoveEvent) {
+                removedPaths.add(((VFileMoveEvent) event).getOldPath());
+            } else if (event instanceof VFilePropertyChangeEvent) {
+                removedPaths.add(((VFilePropertyChangeEvent) event).getOldPath());
+            } else if (event instanceof VFileCopyEvent) {
+                file = ((VFileCopyEvent) event).findCreatedFile();
+            }
+
+            if (file != null) {
+                files.add(file);
+            }
+        }
+
+        if (files.isEmpty() && removedPaths.isEmpty()) return;
+
+        boolean tooManyChanges;
+        synchronized (this) {
+            myPendingFiles.addAll(files);
+            myPendingRemovedPaths.addAll(removedPaths);
+            tooManyChanges = myPendingFiles.size() + myPendingRemovedPaths.size() > MAX_PENDING_CHANGES;
+        }
+
+        if (tooManyChanges) {
+            // cheaper to scan everything
+            scheduleUpdate();
+        } else if (isEnabled() && !myProject.isDisposed()) {
+            myUpdateAlarm.addRequest(this::processPendingChanges, PENDING_CHANGES_DELAY_MS);
+        }
+    }
+
+    /**
+     * Check files created, moved or renamed since last processed against the index and update
+     * mismatches. Does nothing if there is no valid result, the next full scan will include them.
+     */
+    void processPendingChanges() {
+        if (myProject.isDisposed()) return;
+
+        ArrayList<VirtualFile> files;
+        ArrayList<String> removedPaths;
+        long modificationCount;
+
+        synchronized (this) {
+            if (myMismatches == null || myMismatchesModificationCount != myModificationCount.get()) return;
+            if (myPendingFiles.isEmpty() && myPendingRemovedPaths.isEmpty()) return;
+
+            files = myPendingFiles;
+            removedPaths = myPendingRemovedPaths;
+            modificationCount = myMismatchesModificationCount;
+            myPendingFiles = new ArrayList<>();
+            myPendingRemovedPaths = new ArrayList<>();
+        }
+
+        GitFileFixerProjectRoots projectRoots = GitFileFixerProjectRoots.getInstance(myProject);
+        ArrayList<String> checkedPaths = new ArrayList<>(files.size());
+        ArrayList<String> checkedDirectories = new ArrayList<>();
+        ArrayList<GitRepoFile> mismatches = new ArrayList<>();
+
+        try {
+            ReadAction.run(() -> {
+                for (VirtualFile file : files) {
+                    if (!file.isValid()) continue;
+
+                    checkedPaths.add(file.getPath());
+                    if (file.isDirectory()) {
+                        checkedDirectories.add(file.getPath());
+                    } else {
+                        GitRepoFile repoFile = projectRoots.getGitRepoFile(file);
+                        if (repoFile != null && repoFile.gitPath != null && !repoFile.gitPath.equals(repoFile.filePath)) {
+                            mismatches.add(repoFile);
+                        }
+                    }
+                }
+            });
+
+            // directories are walked along the index in read actions yielding to write actions
+            if (!checkedDirectories.isEmpty()) {
+                mismatches.addAll(projectRoots.findMismatchedIndexFiles(projectRoots.getDirectoryScope(checkedDirectories)));
+            }
+        } catch (ProcessCanceledException e) {
+            // checked on next call
+            synchronized (this) {
+                myPendingFiles.addAll(files);
+                myPendingRemovedPaths.addAll(removedPaths);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            if (myMismatches == null || modificationCount != myModificationCount.get()) return;
+
+            removedPaths.addAll(checkedPaths);
+            myMismatches.keySet().removeIf(fullPath -> {
+                for (String path : removedPaths) {
+                    if (fullPath.startsWith(path) && (fullPath.length() == path.length() || fullPath.charAt(path.length()) == '/')) return true;
+                }
+                return false;
+            });
+
+            for (GitRepoFile repoFile : mismatches) {
+                myMismatches.put(repoFile.fullPath, repoFile);
+            }
+        }
+    }
+
+    /**
+     * Mismatches of all index files if nothing changed since they were computed
+     *
+     * @return copy of mismatches or null if not available
+     */
+    @Nullable
+    List<GitRepoFile> getUpToDateMismatches() {
+        // index changes are not always reported as repository changes, and the index may have
+        // been reloaded since, by the commit check or another project sharing it
+        GitFileFixerProjectRoots projectRoots = GitFileFixerProjectRoots.getInstance(myProject);
+        List<GitIndexStamp> stamps = projectRoots.getLoadedStamps();
+        boolean indexChanged;
+        synchronized (this) {
+            indexChanged = myMismatches != null && !stamps.equals(myMismatchesStamps);
+        }
+
+        if (indexChanged || projectRoots.isIndexChanged()) {
+            scheduleUpdate();
+            return null;
+        }
+
+        processPendingChanges();
+
+        synchronized (this) {
+            if (myMismatches == null || myMismatchesModificationCount != myModificationCount.get() || !stamps.equals(myMismatchesStamps)) return null;
+
+            // fix action is set on these by the user, don't share them
+            ArrayList<GitRepoFile> result = new ArrayList<>(myMismatches.size());
+            for (GitRepoFile repoFile : myMismatches.values()) {
+                result.add(new GitRepoFile(repoFile.gitRepo, repoFile.fullPath, repoFile.gitPath, repoFile.filePath));
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void dispose() {
+        ProgressIndicator indicator = myUpdateIndicator;
+        if (indicator != null) {
+            indicator.cancel();
+        }
+    }
+}
@@ -65,20 +65,10 @@ public class GitFileCaseShowMismatches {
      * @return shortest case mismatch path or null
      */
     static @Nullable String shortestCaseMismatchPath(GitRepoFile file) {
-        String[] parts1 = file.gitPath.split("/");
-        String[] parts2 = file.filePath.split("/");
-        int iMax = parts1.length;
-        StringBuilder sb = new StringBuilder();
-        String sep = "";
-        for (int i = 0; i < iMax - 1; i++) {
-            sb.append(sep).append(parts1[i].toLowerCase());
-            sep = "/";
-
-            if (!parts1[i].equals(parts2[i])) {
-                return sb.toString();
-            }
-        }
-        return null;
+        // a collision is fixed by removing its entry, not together with its directory
+        if (file.collision) return null;
+
+        return GitCaseRenamePlanner.shortestMismatchedDirectory(file.gitPath, file.filePath);
     }
 
     public void setRepoFileList(List<GitRepoFile> repoFileList) {
@@ -115,6 +105,12 @@ public class GitFileCaseShowMismatches {
             Bundle.message("show.mismatches.table-column.fix.choice.file-system"),
     };
 
+    // collisions are fixed by removing the git entry and cannot be fixed on the file system
+    final static String[] collisionFixChoices = {
+            Bundle.message("show.mismatches.table-column.fix.choice.ask"),
+            Bundle.message("show.mismatches.table-column.fix.choice.git-remove"),
+    };
+
     final static Icon[] fixColumnIcons = {
             PluginIcons.NoArrow,
             PluginIcons.LeftArrow,
@@ -160,17 +156,21 @@ public class GitFileCaseShowMismatches {
         }
 
         public String valueOf(final GitRepoFile object) {
-            return fixChoices[object.fixAction];
+            return object.collision ? collisionFixChoices[object.fixAction] : fixChoices[object.fixAction];
         }
 
         public void setValue(final GitRepoFile item, final String choice) {
             if (item != null) {
-                item.fixAction = getAction(choice);
+                int action = getAction(choice);
+                if (!item.collision || action != GitFixerConfiguration.FIX_FILE_SYSTEM) {
+                    item.fixAction = action;
+                }
             }
         }
 
         static int getAction(final String choice) {
-            return fixChoices[GitFixerConfiguration.FIX_FILE_SYSTEM].equals(choice) ? GitFixerConfiguration.FIX_FILE_SYSTEM : fixChoices[GitFixerConfiguration.FIX_GIT].equals(choice) ? GitFixerConfiguration.FIX_GIT : FIX_PROMPT;
+            return fixChoices[GitFixerConfiguration.FIX_FILE_SYSTEM].equals(choice) ? GitFixerConfiguration.FIX_FILE_SYSTEM
+                    : fixChoices[GitFixerConfiguration.FIX_GIT].equals(choice) || collisionFixChoices[GitFixerConfiguration.FIX_GIT].equals(choice) ? GitFixerConfiguration.FIX_GIT : FIX_PROMPT;
         }
 
         @Override
@@ -231,7 +231,7 @@ public class GitFileCaseShowMismatches {
 
             public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
                 myFixChooser.setCell(table, row, column);
-                myFixChooser.setOptions((Object[]) fixChoices);
+                myFixChooser.setOptions((Object[]) (myGitRepoFile.collision ? collisionFixChoices : fixChoices));
                 myFixChooser.setDefaultValue(value);
                 myFixChooser.setToString(o -> (String) o);
                 myFixChooser.addActionListener(e -> {
@@ -281,6 +281,9 @@ public class GitFileCaseShowMismatches {
         public DefaultHighlightPainter highlight_painter = new DefaultHighlightPainter(new JBColor(new Color(239, 175, 255),
                 new Color(163, 2, 68)));
 
+        public DefaultHighlightPainter collision_painter = new DefaultHighlightPainter(new JBColor(new Color(255, 205, 140),
+                new Color(140, 80, 0)));
+
         public MyDefaultTableCellRenderer(final GitRepoFile repoFile) {
             setBorder(BorderFactory.createEmptyBorder());
             setHighlighter(high);
@@ -293,6 +296,8 @@ public class GitFileCaseShowMismatches {
             String text = (String) value;
 
             setText(" " + text);
+            setToolTipText(myRepoFile.collision ? Bundle.message("show.mismatches.collision.tooltip") : null);
+            DefaultHighlightPainter painter = myRepoFile.collision ? collision_painter : highlight_painter;
 
             int lastPos = -1;
             int iMax = text.length();
@@ -304,7 +309,7 @@ public class GitFileCaseShowMismatches {
                 } else {
                     if (lastPos != -1) {
                         try {
-                            high.addHighlight(lastPos + 1, i + 1, highlight_painter);
+                            high.addHighlight(lastPos + 1, i + 1, painter);
                         } catch (BadLocationException e) {
                             e.printStackTrace();
                         }
@@ -315,7 +320,7 @@ public class GitFileCaseShowMismatches {
 
             if (lastPos != -1) {
                 try {
-                    high.addHighlight(lastPos + 1, iMax + 1, highlight_painter);
+                    high.addHighlight(lastPos + 1, iMax + 1, painter);
                 } catch (BadLocationException e) {
                     e.printStackTrace();
                 }
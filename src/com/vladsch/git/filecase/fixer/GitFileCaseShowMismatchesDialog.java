@@ -71,6 +71,8 @@ public class GitFileCaseShowMismatchesDialog extends DialogWrapper {
     void forAllRepoFiles(int fixAction) {
         int iMax = myShowMatchesForm.myRepoFilesModel.getRowCount();
         for (int i = 0; i < iMax; i++) {
+            // removing one of colliding entries is only chosen per entry
+            if (fixAction != FIX_PROMPT && myShowMatchesForm.myRepoFilesModel.getItem(i).collision) continue;
             myShowMatchesForm.myRepoFilesModel.setValueAt(GitFileCaseShowMismatches.fixChoices[fixAction], i, 1);
         }
     }
@@ -4,18 +4,22 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
-import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vcs.ProjectLevelVcsManager;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
-import com.intellij.openapi.vfs.InvalidVirtualFileAccessException;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.messages.MessageBusConnection;
 import git4idea.commands.Git;
 import git4idea.commands.GitCommand;
+import git4idea.commands.GitCommandResult;
 import git4idea.commands.GitLineHandler;
 import git4idea.repo.GitRepository;
 import git4idea.repo.GitRepositoryManager;
@@ -23,33 +27,32 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.ide.PooledThreadExecutor;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
-
-import static com.intellij.vcsUtil.VcsFileUtil.FILE_PATH_LIMIT;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class GitFileFixerProjectRoots implements Disposable, DumbAware {
     static final Logger LOG = Logger.getInstance("com.vladsch.git.filecase.fixer");
+    static final ExecutorService INDEX_LOADER = AppExecutorUtil.createBoundedApplicationPoolExecutor("GitFileCaseFixer Index Loader",
+            Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors())));
 
     @NotNull final ProjectLevelVcsManager projectLevelVcsManager;
-    @NotNull final static GitRepoFiles NULL_GIT_REPO_FILES = new GitRepoFiles();
 
     final private Project myProject;
 
-    @NotNull Collection<GitRepository> vcsRoots = new ArrayList<>();
-    @NotNull ArrayList<GitRepoFiles> vcsGitFilesList = new ArrayList<>();
-    HashMap<String, GitRepoFiles> gitPathMap = new HashMap<>();  // file path (lowercase) to Map<git path lowercase, git path>
+    private final AtomicReference<RepoRoots> myRepoRoots = new AtomicReference<>(new RepoRoots(Collections.emptyList(), null, new GitRootIndex<>()));
 
     @NotNull
     public static GitFileFixerProjectRoots getInstance(@NotNull Project project) {
@@ -60,15 +63,20 @@ public class GitFileFixerProjectRoots implements Disposable, DumbAware {
         return ApplicationManager.getApplication().getService(git4idea.commands.Git.class);
     }
 
-    @NotNull
-    static Set<String> gitFiles(@NotNull Project project, @NotNull VirtualFile root) throws VcsException {
-        GitLineHandler handler = new GitLineHandler(project, root, GitCommand.LS_FILES);
+    /**
+     * Run git ls-files with -z and given options, passing each record to the consumer as it is read
+     */
+    static void gitFiles(@NotNull Project project, @NotNull VirtualFile root, @NotNull Consumer<String> recordConsumer, String... options) throws VcsException {
+        // NUL separated output is not quoted and is passed to the consumer as it is read, no intermediate collections
+        GitLineHandler handler = new GitNulRecordHandler(project, root, GitCommand.LS_FILES, recordConsumer);
         handler.setSilent(true);
-        //handler.addParameters("--ignored", "--others", "--exclude-standard");
+        handler.addParameters("-z");
+        handler.addParameters(options);
         handler.endOptions();
-        //handler.addParameters(paths);
-        String output = "";
+        runGitCommand(handler);
+    }
 
+    static void runGitCommand(@NotNull GitLineHandler handler) throws VcsException {
         Future<Git> future = PooledThreadExecutor.INSTANCE.submit(GitFileFixerProjectRoots::getGitInstance);
         Git gitInstance = null;
         try {
@@ -77,22 +85,100 @@ public class GitFileFixerProjectRoots implements Disposable, DumbAware {
         }
 
         if (gitInstance != null) {
-            output = StringUtil.join(gitInstance.runCommand(handler).getOutput(), "\n");
+            GitCommandResult result = gitInstance.runCommandWithoutCollectingOutput(handler);
+            if (!result.success()) {
+                throw new VcsException(result.getErrorOutputAsJoinedString());
+            }
         }
-        return new HashSet<>(Arrays.asList(StringUtil.splitByLines(output)));
     }
 
     public static void fixFileSystemCase(final List<GitRepoFile> fixFileCaseList) {
-        ApplicationManager.getApplication().invokeLater(() -> ApplicationManager.getApplication().runWriteAction(() -> {
-            for (GitRepoFile repoFile : fixFileCaseList) {
-                assert repoFile.gitRepo.myRepoRoot != null;
-                repoFile.matchGit();
+        if (fixFileCaseList.isEmpty()) return;
+
+        // plan renames per repository, each mismatched directory is renamed once for all files under it
+        LinkedHashMap<GitRepoFiles, GitCaseRenamePlanner> plannerMap = new LinkedHashMap<>();
+        for (GitRepoFile repoFile : fixFileCaseList) {
+            if (repoFile.gitPath == null || repoFile.gitPath.equals(repoFile.filePath)) continue;
+
+            GitCaseRenamePlanner planner = plannerMap.computeIfAbsent(repoFile.gitRepo, repoFiles -> new GitCaseRenamePlanner());
+            if (!planner.add(repoFile.filePath, repoFile.gitPath)) {
+                LOG.warn(String.format("Mismatched file %s git path %s differs by more than case", repoFile.fullPath, repoFile.gitPath));
             }
-        }));
+        }
+
+        if (plannerMap.isEmpty()) return;
+
+        Project project = fixFileCaseList.get(0).gitRepo.myProject;
+        ApplicationManager.getApplication().invokeLater(() -> {
+            // resolve all files first, renaming a parent directory changes the path of files under it
+            ArrayList<VirtualFile> files = new ArrayList<>();
+            ArrayList<String> newNames = new ArrayList<>();
+            ArrayList<VirtualFile> rootDirs = new ArrayList<>();
+
+            for (Map.Entry<GitRepoFiles, GitCaseRenamePlanner> entry : plannerMap.entrySet()) {
+                VirtualFile rootDir = entry.getKey().myRepoRoot;
+                for (GitCaseRenamePlanner.Rename rename : entry.getValue().getRenames()) {
+                    VirtualFile file = rootDir.findFileByRelativePath(rename.myFilePath);
+                    if (file != null) {
+                        files.add(file);
+                        newNames.add(rename.myNewName);
+                        rootDirs.add(rootDir);
+                    } else {
+                        LOG.error(String.format("Mismatched file %s was not found from %s", rename.myFilePath, rootDir.getPath()));
+                    }
+                }
+            }
+
+            if (files.isEmpty()) return;
+
+            // all renames in one command, one undo step
+            WriteCommandAction.runWriteCommandAction(project, Bundle.message("git.filecase.fixer.rename.mismatched.files"), null, () -> {
+                ArrayList<VirtualFile> dirtyFiles = new ArrayList<>();
+                ArrayList<VirtualFile> dirtyDirs = new ArrayList<>();
+
+                // one fix batch event per repository, files are in repository order
+                GitFileCaseEvents.FixBatch event = null;
+                int batchStart = 0;
+                int failures = 0;
+
+                int iMax = files.size();
+                for (int i = 0; i < iMax; i++) {
+                    if (event == null) {
+                        event = new GitFileCaseEvents.FixBatch();
+                        event.begin();
+                    }
+
+                    VirtualFile file = files.get(i);
+                    try {
+                        file.rename(GitFileFixerProjectRoots.class, newNames.get(i));
+                        (file.isDirectory() ? dirtyDirs : dirtyFiles).add(file);
+                    } catch (IOException e) {
+                        LOG.warn(String.format("Renaming %s to %s", file.getPath(), newNames.get(i)), e);
+                        failures++;
+                    }
+
+                    if (i + 1 == iMax || rootDirs.get(i + 1) != rootDirs.get(i)) {
+                        event.end();
+                        if (event.shouldCommit()) {
+                            event.repoRoot = rootDirs.get(i).getPath();
+                            event.fix = GitFileCaseEvents.FIX_FILE_SYSTEM;
+                            event.files = i + 1 - batchStart;
+                            event.failures = failures;
+                            event.commit();
+                        }
+                        event = null;
+                        batchStart = i + 1;
+                        failures = 0;
+                    }
+                }
+
+                VcsDirtyScopeManager.getInstance(project).filesDirty(dirtyFiles, dirtyDirs);
+            });
+        }, project.getDisposed());
     }
 
     public static void fixGitFileCase(final List<GitRepoFile> fixGitList) {
-        // remove then add, combine them by git repo and convert in one shot
+        // combine them by git repo and convert in one shot
         HashMap<GitRepoFiles, ArrayList<GitRepoFile>> repoFileMap = new HashMap<>();
 
         for (GitRepoFile repoFile : fixGitList) {
@@ -102,36 +188,60 @@ public class GitFileFixerProjectRoots implements Disposable, DumbAware {
         }
 
         for (GitRepoFiles gitRepoFiles : repoFileMap.keySet()) {
-            ArrayList<GitRepoFile> repoFiles = repoFileMap.get(gitRepoFiles);
-            ArrayList<String> gitPaths = new ArrayList<>(repoFiles.size());
-            ArrayList<String> filePaths = new ArrayList<>(repoFiles.size());
-
-            for (GitRepoFile repoFile : repoFiles) {
-                gitPaths.add(repoFile.gitPath);
-                filePaths.add(repoFile.filePath);
+            try {
+                renameIndexEntries(gitRepoFiles, repoFileMap.get(gitRepoFiles));
+            } catch (VcsException e) {
+                LOG.warn(String.format("Renaming index entries in %s", gitRepoFiles.myRepoRoot.getPath()), e);
             }
+        }
+    }
 
-            int iMax = repoFiles.size();
-            int lastParam = 0;
-            int gitPathsLength = 0;
-            int filePathsLength = 0;
-            for (int i = 0; i < iMax; i++) {
-                gitPathsLength += gitPaths.get(i).length();
-                filePathsLength += filePaths.get(i).length();
-
-                if (gitPathsLength > FILE_PATH_LIMIT || filePathsLength > FILE_PATH_LIMIT) {
-                    // process lastParam to i-1
-                    GitRepoFile.matchFileSystem(gitRepoFiles, gitPaths.subList(lastParam, i - 1), filePaths.subList(lastParam, i - 1));
-
-                    lastParam = i - 1;
-                    gitPathsLength = gitPaths.get(i).length();
-                    filePathsLength = filePaths.get(i).length();
-                }
+    /**
+     * Rename index entries to their file path with a single update-index, reusing each entry's mode and
+     * object id so file content is not hashed again. Collisions are removed. Unmerged entries are left as is.
+     */
+    static void renameIndexEntries(final GitRepoFiles gitRepo, final List<GitRepoFile> repoFiles) throws VcsException {
+        HashMap<String, String> renames = new HashMap<>(repoFiles.size() * 2);
+        for (GitRepoFile repoFile : repoFiles) {
+            if (repoFile.collision) {
+                // an empty path only removes the entry
+                renames.put(repoFile.gitPath, "");
+            } else if (repoFile.gitPath != null && !repoFile.gitPath.equals(repoFile.filePath)) {
+                renames.put(repoFile.gitPath, repoFile.filePath);
             }
+        }
+
+        if (renames.isEmpty()) return;
+
+        GitIndexInfo indexInfo = new GitIndexInfo(renames);
+        gitFiles(gitRepo.myProject, gitRepo.myRepoRoot, indexInfo::addStageRecord, "--stage");
+
+        if (indexInfo.isEmpty()) return;
+
+        GitFileCaseEvents.FixBatch event = new GitFileCaseEvents.FixBatch();
+        event.begin();
+
+        byte[] input = indexInfo.toBytes();
+        GitLineHandler handler = new GitLineHandler(gitRepo.myProject, gitRepo.myRepoRoot, GitCommand.UPDATE_INDEX);
+        handler.setSilent(true);
+        handler.addParameters("-z", "--index-info");
+        handler.setInputProcessor(stream -> {
+            stream.write(input);
+            stream.close();
+        });
 
-            if (lastParam < iMax) {
-                // process last params
-                GitRepoFile.matchFileSystem(gitRepoFiles, gitPaths.subList(lastParam, iMax), filePaths.subList(lastParam, iMax));
+        boolean failed = true;
+        try {
+            runGitCommand(handler);
+            failed = false;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.repoRoot = gitRepo.myRepoRoot.getPath();
+                event.fix = GitFileCaseEvents.FIX_GIT;
+                event.files = indexInfo.getEntries();
+                event.failures = failed ? indexInfo.getEntries() : 0;
+                event.commit();
             }
         }
     }
@@ -141,124 +251,84 @@ public class GitFileFixerProjectRoots implements Disposable, DumbAware {
         final String fullPath;
         final String gitPath;
         final String filePath;
+        final boolean collision;    // gitPath is an index entry differing only by case from another, fixed by removing it
         int fixAction;
 
         public GitRepoFile(final GitRepoFiles repoFiles, final String fullPath, final String gitPath, final String filePath) {
+            this(repoFiles, fullPath, gitPath, filePath, false);
+        }
+
+        public GitRepoFile(final GitRepoFiles repoFiles, final String fullPath, final String gitPath, final String filePath, final boolean collision) {
             gitRepo = repoFiles;
             this.fullPath = fullPath;
             this.gitPath = gitPath;
             this.filePath = filePath;
+            this.collision = collision;
             fixAction = GitFixerConfiguration.FIX_PROMPT;
         }
-
-        static void matchFileSystem(final GitRepoFiles gitRepo, final List<String> gitPaths, final List<String> filePaths) {
-            assert gitRepo.myProject != null;
-            assert gitRepo.myRepoRoot != null;
-            GitLineHandler rmHandler = new GitLineHandler(gitRepo.myProject, gitRepo.myRepoRoot, GitCommand.RM);
-            rmHandler.addParameters("--cached");
-            rmHandler.endOptions();
-            rmHandler.addParameters(gitPaths);
-            try {
-                getGitInstance().runCommand(rmHandler).getOutput();
-                GitLineHandler addHandler = new GitLineHandler(gitRepo.myProject, gitRepo.myRepoRoot, GitCommand.ADD);
-                addHandler.addParameters("--ignore-errors");
-                addHandler.endOptions();
-                addHandler.addParameters(filePaths);
-                getGitInstance().runCommand(addHandler).getOutput();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
-
-        public void matchGit() {
-            if (!gitPath.equals(filePath)) {
-                assert gitRepo.myRepoRoot != null;
-                ApplicationManager.getApplication().invokeLater(() -> ApplicationManager.getApplication().runWriteAction(() -> matchGit(gitRepo, filePath, gitPath, fullPath)));
-            }
-        }
-
-        static void fixFileCase(@Nullable VirtualFile file, @Nullable File path) throws IOException {
-            if (file != null && path != null) {
-                String filePath = file.getPath();
-                String pathPath = path.getPath();
-                if (filePath.toLowerCase().endsWith(pathPath.toLowerCase())) {
-                    filePath = filePath.substring(filePath.length() - pathPath.length());
-
-                    if (filePath.equalsIgnoreCase(pathPath) && !filePath.equals(pathPath)) {
-                        // rename file and possibly parent directories
-                        if (!file.getName().equals(path.getName())) {
-                            // rename file
-                            file.rename(file, path.getName());
-                        }
-
-                        fixFileCase(file.getParent(), path.getParentFile());
-                    }
-                }
-            }
-        }
-
-        static void matchGit(final GitRepoFiles gitRepo, final String filePath, final String gitPath, final String fullPath) {
-            assert gitRepo.myRepoRoot != null;
-            VirtualFile file = gitRepo.myRepoRoot.findFileByRelativePath(filePath);
-
-            if (file != null) {
-                try {
-                    WriteCommandAction.runWriteCommandAction(gitRepo.myProject, Bundle.message("git.filecase.fixer.rename.mismatched.file"), null, () -> {
-                        File gitFile = new File(gitPath);
-                        try {
-                            // rename the parent directories that do not match also
-                            fixFileCase(file, gitFile);
-                            VcsDirtyScopeManager.getInstance(gitRepo.myProject).fileDirty(file);
-                        } catch (IOException e) {
-                            e.printStackTrace();
-                        }
-                    });
-                } catch (Throwable throwable) {
-                    throwable.printStackTrace();
-                }
-            } else {
-                LOG.error(String.format("Mismatched file %s was not found by relative path %s from %s", fullPath, filePath, gitRepo.myRepoRoot.getPath()));
-            }
-        }
     }
 
+    /**
+     * Project's view of a repository, the index is shared with other projects holding the same root
+     */
     static class GitRepoFiles {
         final VirtualFile myRepoRoot;
         final Project myProject;
-        final Map<String, String> myIndexFiles;
         final String myRepoPrefix;
+        final boolean myCaseSensitive;
+        final @NotNull GitRepoIndexCache.Entry myEntry;
 
-        GitRepoFiles() {
-            myIndexFiles = new HashMap<>();
-            myRepoRoot = null;
-            myProject = null;
-            myRepoPrefix = "";
-        }
-
-        public GitRepoFiles(final Project project, final VirtualFile repoRoot) {
+        public GitRepoFiles(final Project project, final VirtualFile repoRoot, final @NotNull GitRepoIndexCache.Entry entry) {
             myProject = project;
             myRepoRoot = repoRoot;
-            myIndexFiles = new HashMap<>();
+            myEntry = entry;
+            myCaseSensitive = entry.myCaseSensitive;
 
             String absolutePath = repoRoot.getPath();
             if (absolutePath.endsWith("/.")) {
                 absolutePath = absolutePath.substring(0, absolutePath.length() - "/.".length());
             }
 
-            myRepoPrefix = absolutePath.toLowerCase() + "/";
+            myRepoPrefix = absolutePath + "/";
+        }
+
+        boolean isIndexChanged() {
+            return myEntry.isIndexChanged();
+        }
+
+        @Nullable
+        GitIndexStamp getLoadedStamp() {
+            return myEntry.getLoadedStamp();
+        }
+
+        @NotNull
+        GitPathIndex getIndex() {
+            return myEntry.getIndex(myProject, myRepoRoot);
         }
 
         void loadIndexFiles() {
-            myIndexFiles.clear();
+            myEntry.loadIndexFiles(myProject, myRepoRoot);
+        }
+    }
 
-            try {
-                Set<String> paths = gitFiles(myProject, myRepoRoot);
-                for (String path : paths) {
-                    myIndexFiles.put(path.toLowerCase(), path);
-                }
-            } catch (VcsException e) {
-                e.printStackTrace();
-            }
+    /**
+     * Immutable state of the project's git roots, replaced as a whole when roots change or are
+     * loaded so readers on any thread see a complete state without locking
+     */
+    static final class RepoRoots {
+        final @NotNull List<GitRepository> myRoots;
+        final @Nullable List<GitRepoFiles> myRepoFilesList;      // null until loaded, longest prefix first
+        final @NotNull GitRootIndex<GitRepoFiles> myRootIndex;    // folded root path to repo files, not modified once published
+
+        RepoRoots(@NotNull List<GitRepository> roots, @Nullable List<GitRepoFiles> repoFilesList, @NotNull GitRootIndex<GitRepoFiles> rootIndex) {
+            myRoots = roots;
+            myRepoFilesList = repoFilesList;
+            myRootIndex = rootIndex;
+        }
+
+        @NotNull
+        List<GitRepoFiles> getRepoFilesList() {
+            return myRepoFilesList == null ? Collections.emptyList() : myRepoFilesList;
         }
     }
 
@@ -269,102 +339,326 @@ public class GitFileFixerProjectRoots implements Disposable, DumbAware {
         //noinspection ThisEscapedInObjectConstruction
         @Nullable MessageBusConnection messageBus = myProject.getMessageBus().connect(this);
         messageBus.subscribe(ProjectLevelVcsManager.VCS_CONFIGURATION_CHANGED, () -> {
-            vcsRoots.clear();
+            ArrayList<GitRepository> roots = new ArrayList<>();
             List<GitRepository> repositories = myProject.getService(GitRepositoryManager.class).getRepositories();
             for (GitRepository repository : repositories) {
                 if (repository != null) {
-                    vcsRoots.add(repository);
+                    roots.add(repository);
                 }
             }
-            clearCaches();
+            releaseRepoFiles(myRepoRoots.getAndSet(new RepoRoots(Collections.unmodifiableList(roots), null, new GitRootIndex<>())));
         });
     }
 
+    /**
+     * Drop loaded repositories, they are loaded again when next needed
+     */
     void clearCaches() {
-        gitPathMap.clear();
-        vcsGitFilesList.clear();
+        while (true) {
+            RepoRoots repoRoots = myRepoRoots.get();
+            if (repoRoots.myRepoFilesList == null) return;
+
+            if (myRepoRoots.compareAndSet(repoRoots, new RepoRoots(repoRoots.myRoots, null, new GitRootIndex<>()))) {
+                releaseRepoFiles(repoRoots);
+                return;
+            }
+        }
     }
 
-    void visitAllIndexFiles(Consumer<GitRepoFile> fileVisitor) {
-        initializeGitRepoFilesList();
-        for (GitRepoFiles repoFiles : vcsGitFilesList) {
-            VirtualFile rootDir = repoFiles.myRepoRoot;
-            String rootPrefix = repoFiles.myRepoPrefix;
-
-            for (String gitPath : repoFiles.myIndexFiles.values()) {
-                try {
-                    VirtualFile virtualFile = rootDir.findFileByRelativePath(gitPath);
-                    if (virtualFile != null) {
-                        String fullPath = virtualFile.getPath();
-                        if (fullPath.length() >= rootPrefix.length()) {
-                            String filePath = fullPath.substring(rootPrefix.length());
-                            fileVisitor.consume(new GitRepoFile(repoFiles, fullPath, gitPath, filePath));
-                        }
-                    }
-                } catch (InvalidVirtualFileAccessException ignored) {
-                    //e.printStackTrace();
+    private static void releaseRepoFiles(@NotNull RepoRoots repoRoots) {
+        // readers holding the old state keep their views, the shared index is only dropped from the cache
+        GitRepoIndexCache indexCache = GitRepoIndexCache.getInstance();
+        for (GitRepoFiles repoFiles : repoRoots.getRepoFilesList()) {
+            indexCache.release(repoFiles.myEntry);
+        }
+    }
+
+    @NotNull
+    List<GitRepoFile> findMismatchedIndexFiles() {
+        return GitIndexFileScanner.findMismatchedFiles(initializeGitRepoFilesList().getRepoFilesList());
+    }
+
+    /**
+     * Scope of directories touched by changed files
+     *
+     * @param changedPaths full paths of changed files
+     * @param radius       number of directories above a changed file's directory to include
+     *
+     * @return scope with all files under each changed file's directory raised by radius, and only
+     *         the files directly in its directories above that. The repository root is never
+     *         included with all files under it.
+     */
+    @NotNull
+    GitIndexScope getTouchedDirectoryScope(@NotNull Collection<String> changedPaths, int radius) {
+        GitRootIndex<GitRepoFiles> rootIndex = initializeGitRepoFilesList().myRootIndex;
+
+        GitIndexScope scope = new GitIndexScope();
+        for (String changedPath : changedPaths) {
+            GitRepoFiles repoFiles = rootIndex.findInnermost(changedPath);
+            if (repoFiles == null || changedPath.length() <= repoFiles.myRepoPrefix.length()) continue;
+
+            String path = changedPath.substring(repoFiles.myRepoPrefix.length());
+            int end = path.lastIndexOf('/');
+            for (int i = 0; i < radius && end > 0; i++) {
+                end = path.lastIndexOf('/', end - 1);
+            }
+
+            // a change at the root would otherwise scan the whole repository
+            scope.addDirectory(repoFiles, end > 0 ? path.substring(0, end + 1) : "", end > 0);
+
+            // directories above only with their own files, their names are matched on the way down
+            while (end > 0) {
+                end = path.lastIndexOf('/', end - 1);
+                scope.addDirectory(repoFiles, end > 0 ? path.substring(0, end + 1) : "", false);
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * Scope of directories with all files under them
+     *
+     * @param dirPaths full paths of directories
+     *
+     * @return scope with each directory in its innermost repository, repository roots are not included
+     */
+    @NotNull
+    GitIndexScope getDirectoryScope(@NotNull Collection<String> dirPaths) {
+        GitRootIndex<GitRepoFiles> rootIndex = initializeGitRepoFilesList().myRootIndex;
+
+        GitIndexScope scope = new GitIndexScope();
+        for (String dirPath : dirPaths) {
+            GitRepoFiles repoFiles = rootIndex.findInnermost(dirPath);
+            if (repoFiles == null || dirPath.length() <= repoFiles.myRepoPrefix.length()) continue;
+
+            scope.addDirectory(repoFiles, dirPath.substring(repoFiles.myRepoPrefix.length()), true);
+        }
+        return scope;
+    }
+
+    @NotNull
+    List<GitRepoFile> findMismatchedIndexFiles(@NotNull GitIndexScope scope) {
+        return GitIndexFileScanner.findMismatchedFiles(initializeGitRepoFilesList().getRepoFilesList(), scope);
+    }
+
+    /**
+     * Index entries differing only by case from another entry of their repository, found while
+     * loading the index. The entry matching the file on disk is kept, the other is the collision.
+     *
+     * @return collisions with file path of the kept entry
+     */
+    @NotNull
+    List<GitRepoFile> findIndexCollisions() {
+        ArrayList<GitRepoFile> collisions = new ArrayList<>();
+        for (GitRepoFiles repoFiles : initializeGitRepoFilesList().getRepoFilesList()) {
+            GitPathIndex index = repoFiles.getIndex();
+            for (String path : index.getCollisions()) {
+                ProgressManager.checkCanceled();
+
+                int node = index.findFile(path);
+                if (node == GitPathIndex.NONE) continue;
+
+                String filePath = index.getPath(node);
+                VirtualFile file = LocalFileSystem.getInstance().findFileByPath(repoFiles.myRepoPrefix + filePath);
+                if (file != null && file.getPath().length() > repoFiles.myRepoPrefix.length()) {
+                    filePath = file.getPath().substring(repoFiles.myRepoPrefix.length());
                 }
+
+                // when the later entry is the one on disk the first one is removed
+                String gitPath = filePath.equals(path) ? index.getPath(node) : path;
+                collisions.add(new GitRepoFile(repoFiles, repoFiles.myRepoPrefix + filePath, gitPath, filePath, true));
             }
         }
+        return collisions;
     }
 
+    /**
+     * Index entry a new or moved path of a case-sensitive file system would collide with in a
+     * case-insensitive checkout. Looks the path up in the loaded index, does not scan.
+     *
+     * @param fullPath   path of the file
+     * @param movedPaths paths of files moved or deleted by the commit
+     *
+     * @return collision of the path with file path of the colliding entry's case, null if none or
+     *         the path is on a case-insensitive file system
+     */
     @Nullable
-    GitRepoFile getGitRepoFile(VirtualFile file) {
-        // find the VcsRoot for this file and then get its index entry
-        GitRepoFiles repositoryPathMap;
+    GitRepoFile getCaseCollision(@NotNull String fullPath, @NotNull Collection<String> movedPaths) {
+        GitRepoFiles repoFiles = initializeGitRepoFilesList().myRootIndex.findInnermost(fullPath);
+        if (repoFiles == null || !repoFiles.myCaseSensitive || fullPath.length() <= repoFiles.myRepoPrefix.length()) return null;
+
+        int prefixLength = repoFiles.myRepoPrefix.length();
+        List<String> repoMovedPaths = new ArrayList<>();
+        for (String movedPath : movedPaths) {
+            if (movedPath.startsWith(repoFiles.myRepoPrefix)) repoMovedPaths.add(movedPath);
+        }
+
+        GitPathIndex index = repoFiles.getIndex();
+        int node = index.findCaseCollision(fullPath, prefixLength, repoMovedPaths);
+        if (node == GitPathIndex.NONE) return null;
 
-        String fileDir = file.getParent().getPath().toLowerCase() + "/";
+        // folding keeps length, the colliding part is replaced by the entry's case
+        String gitPath = fullPath.substring(prefixLength);
+        String collidingPath = index.getPath(node);
+        String filePath = collidingPath + gitPath.substring(collidingPath.length());
+        return new GitRepoFile(repoFiles, fullPath, gitPath, filePath, true);
+    }
 
+    @Nullable
+    GitRepoFile getGitRepoFile(VirtualFile file) {
         if (!file.getFileSystem().isCaseSensitive()) {
-            repositoryPathMap = gitPathMap.get(fileDir);
-            if (repositoryPathMap == null) {
-                // go through the roots
-                initializeGitRepoFilesList();
+            // find the innermost git root for this file and then get its index entry
+            String filePath = file.getPath();
+            GitRepoFiles repoFiles = initializeGitRepoFilesList().myRootIndex.findInnermost(filePath);
+
+            if (repoFiles != null && filePath.length() > repoFiles.myRepoPrefix.length()) {
+                GitPathIndex index = repoFiles.getIndex();
+                int node = index.findFile(filePath, repoFiles.myRepoPrefix.length());
+                String fileGitPath = filePath.substring(repoFiles.myRepoPrefix.length());
+                String gitFilePath = node == GitPathIndex.NONE ? null : index.getPath(node);
+                return new GitRepoFile(repoFiles, filePath, gitFilePath, fileGitPath);
             }
+        }
+
+        return null;
+    }
 
-            for (GitRepoFiles gitRepoFiles : vcsGitFilesList) {
-                if (fileDir.startsWith(gitRepoFiles.myRepoPrefix)) {
-                    // the one
-                    repositoryPathMap = gitRepoFiles;
-                    break;
+    /**
+     * Load index files of the current roots if they are not loaded
+     *
+     * @return loaded state, a concurrent change of roots is loaded instead
+     */
+    @NotNull
+    RepoRoots initializeGitRepoFilesList() {
+        while (true) {
+            RepoRoots repoRoots = myRepoRoots.get();
+            if (repoRoots.myRepoFilesList != null) return repoRoots;
+
+            GitRepoIndexCache indexCache = GitRepoIndexCache.getInstance();
+            ArrayList<GitRepoFiles> repoFilesList = new ArrayList<>(repoRoots.myRoots.size());
+            boolean published = false;
+            try {
+                // entries acquired before a failure are released below
+                for (GitRepository root : repoRoots.myRoots) {
+                    repoFilesList.add(new GitRepoFiles(myProject, root.getRoot(), indexCache.acquire(root.getRoot())));
                 }
-            }
 
-            // let's create a jGit repository for it
-            if (repositoryPathMap == null) {
-                repositoryPathMap = NULL_GIT_REPO_FILES;
-            }
+                // entries are shared, a concurrent load of the same roots is not repeated
+                loadIndexFiles(repoFilesList);
 
-            gitPathMap.put(fileDir, repositoryPathMap);
+                // sort by longest prefix
+                repoFilesList.sort(Comparator.comparingInt(o -> -o.myRepoPrefix.length()));
 
-            // get the file's git path if not a null repo
-            if (repositoryPathMap != NULL_GIT_REPO_FILES) {
-                String fileGitPath = file.getPath().substring(repositoryPathMap.myRepoPrefix.length());
-                String gitFilePath = repositoryPathMap.myIndexFiles.get(fileGitPath.toLowerCase());
-                return new GitRepoFile(repositoryPathMap, file.getPath(), gitFilePath, fileGitPath);
+                GitRootIndex<GitRepoFiles> rootIndex = new GitRootIndex<>();
+                for (GitRepoFiles repoFiles : repoFilesList) {
+                    rootIndex.put(repoFiles.myRepoPrefix, repoFiles);
+                }
+
+                RepoRoots loaded = new RepoRoots(repoRoots.myRoots, Collections.unmodifiableList(repoFilesList), rootIndex);
+                published = myRepoRoots.compareAndSet(repoRoots, loaded);
+                if (published) return loaded;
+            } finally {
+                if (!published) {
+                    // cancelled or failed, or roots changed or were loaded by another thread
+                    for (GitRepoFiles repoFiles : repoFilesList) {
+                        indexCache.release(repoFiles.myEntry);
+                    }
+                }
             }
         }
+    }
 
-        return null;
+    /**
+     * Load index files or reload only those repositories whose index changed since they were loaded
+     */
+    void updateGitRepoFilesList() {
+        RepoRoots repoRoots = myRepoRoots.get();
+        if (repoRoots.myRepoFilesList == null) {
+            initializeGitRepoFilesList();
+        } else {
+            ArrayList<GitRepoFiles> changedRepoFiles = new ArrayList<>();
+            for (GitRepoFiles repoFiles : repoRoots.myRepoFilesList) {
+                if (repoFiles.isIndexChanged()) {
+                    changedRepoFiles.add(repoFiles);
+                }
+            }
+
+            // entries reload under their own lock and publish the new index atomically
+            loadIndexFiles(changedRepoFiles);
+        }
+    }
+
+    /**
+     * @return stamps of the loaded indices of all repositories, equal lists mean the same indices
+     *         are loaded, including after a reload by another project sharing them
+     */
+    @NotNull
+    List<GitIndexStamp> getLoadedStamps() {
+        ArrayList<GitIndexStamp> stamps = new ArrayList<>();
+        for (GitRepoFiles repoFiles : myRepoRoots.get().getRepoFilesList()) {
+            stamps.add(repoFiles.getLoadedStamp());
+        }
+        return stamps;
     }
 
-    void initializeGitRepoFilesList() {
-        GitRepoFiles repositoryPathMap;
+    /**
+     * @return true if any repository's index changed since it was loaded or repositories were not loaded
+     */
+    boolean isIndexChanged() {
+        RepoRoots repoRoots = myRepoRoots.get();
+        if (repoRoots.myRepoFilesList == null) return !repoRoots.myRoots.isEmpty();
 
-        if (vcsGitFilesList.isEmpty()) {
-            for (GitRepository root : vcsRoots) {
-                repositoryPathMap = new GitRepoFiles(myProject, root.getRoot());
-                vcsGitFilesList.add(repositoryPathMap);
-                repositoryPathMap.loadIndexFiles();
+        for (GitRepoFiles repoFiles : repoRoots.myRepoFilesList) {
+            if (repoFiles.isIndexChanged()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Load repositories concurrently, waits for all to complete. Cancelling the current
+     * progress indicator cancels the loading.
+     */
+    static void loadIndexFiles(List<GitRepoFiles> repoFilesList) {
+        if (repoFilesList.size() <= 1) {
+            for (GitRepoFiles repoFiles : repoFilesList) {
+                repoFiles.loadIndexFiles();
             }
+            return;
+        }
 
-            // sort by longest prefix
-            vcsGitFilesList.sort(Comparator.comparingInt(o -> -o.myRepoPrefix.length()));
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        ArrayList<Future<?>> futures = new ArrayList<>(repoFilesList.size());
+        for (GitRepoFiles repoFiles : repoFilesList) {
+            futures.add(INDEX_LOADER.submit(() -> ProgressManager.getInstance().runProcess(repoFiles::loadIndexFiles, indicator)));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                while (true) {
+                    ProgressManager.checkCanceled();
+                    try {
+                        future.get(50, TimeUnit.MILLISECONDS);
+                        break;
+                    } catch (TimeoutException ignored) {
+                    }
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ProcessCanceledException) {
+                throw (ProcessCanceledException) e.getCause();
+            }
+            LOG.error(e.getCause());
+        } catch (InterruptedException e) {
+            throw new ProcessCanceledException(e);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
         }
     }
 
     @Override
     public void dispose() {
-
+        clearCaches();
     }
 }
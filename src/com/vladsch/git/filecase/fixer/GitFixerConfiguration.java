@@ -20,6 +20,9 @@ public final class GitFixerConfiguration implements PersistentStateComponent<Git
     public int FIXER_ACTION = FIX_PROMPT;
     public boolean CHECK_FILE_CASE = true;
     public boolean CHECK_UNMODIFIED_FILES = true;
+    public boolean CHECK_TOUCHED_DIRECTORIES = false;      // limit unmodified files to directories of changed files
+    public int TOUCHED_DIRECTORY_RADIUS = 0;               // parent directories of changed files' directories to include
+    public boolean CHECK_CASE_COLLISIONS = true;           // check new and moved paths for case collisions on case-sensitive file systems
 
     @Override
     public GitFixerConfiguration getState() {
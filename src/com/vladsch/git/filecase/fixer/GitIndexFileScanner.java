@@ -0,0 +1,274 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.vfs.InvalidVirtualFileAccessException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFile;
+import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFiles;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Matches index paths to the virtual file system with a single walk of each repository's directory
+ * tree, using {@link GitCaseMismatchDetector}.
+ * <p>
+ * The tree is split into parts aligned on directories which are scanned concurrently, each in its
+ * own read action.
+ */
+class GitIndexFileScanner {
+    static final int MIN_TASK_SIZE = 1000;
+
+    static class ScanTask {
+        final GitRepoFiles myRepoFiles;
+        final GitPathIndex myIndex;
+        final VirtualFile myDir;
+        final int myDirNode;
+        final boolean myDirMismatched;
+        final @Nullable VirtualFile[] myChildren;  // children of directory to scan, null for all
+        final ArrayList<GitRepoFile> myMismatches = new ArrayList<>();
+
+        ScanTask(GitRepoFiles repoFiles, GitPathIndex index, VirtualFile dir, int dirNode, boolean dirMismatched, @Nullable VirtualFile[] children) {
+            myRepoFiles = repoFiles;
+            myIndex = index;
+            myDir = dir;
+            myDirNode = dirNode;
+            myDirMismatched = dirMismatched;
+            myChildren = children;
+        }
+
+        void run() {
+            // retry if a write action interrupts the read action
+            while (true) {
+                myMismatches.clear();
+                if (ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> {
+                    VirtualFile[] children = myChildren != null ? myChildren : getChildren(myDir);
+                    if (children != null) {
+                        GitCaseMismatchDetector<VirtualFile> detector = new GitCaseMismatchDetector<>(VirtualFileTree.INSTANCE, myIndex, myRepoFiles.myRepoPrefix.length());
+                        detector.visitIndexChildren(myDirNode, myDirMismatched, Arrays.asList(children),
+                                (file, gitPath, filePath) -> myMismatches.add(new GitRepoFile(myRepoFiles, file.getPath(), gitPath, filePath)));
+                    }
+                })) {
+                    break;
+                }
+
+                ProgressManager.checkCanceled();
+                ProgressIndicatorUtils.yieldToPendingWriteActions();
+            }
+        }
+    }
+
+    /**
+     * Find all index files whose file system path case differs from the index
+     *
+     * @param repoFilesList repositories
+     *
+     * @return mismatched files in repository order then index path order
+     */
+    static @NotNull List<GitRepoFile> findMismatchedFiles(@NotNull List<GitRepoFiles> repoFilesList) {
+        return findMismatchedFiles(repoFilesList, null);
+    }
+
+    /**
+     * Find index files in scope whose file system path case differs from the index
+     *
+     * @param repoFilesList repositories
+     * @param scope         directories to check, null for all
+     *
+     * @return mismatched files in repository order then index path order
+     */
+    static @NotNull List<GitRepoFile> findMismatchedFiles(@NotNull List<GitRepoFiles> repoFilesList, @Nullable GitIndexScope scope) {
+        GitFileCaseEvents.Scan event = new GitFileCaseEvents.Scan();
+        event.begin();
+
+        int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors());
+        ArrayList<ScanTask> tasks = new ArrayList<>();
+
+        for (GitRepoFiles repoFiles : repoFilesList) {
+            if (scope != null && !scope.contains(repoFiles)) continue;
+
+            GitPathIndex index = repoFiles.getIndex();
+            int taskSize = Math.max(MIN_TASK_SIZE, index.size() / (parallelism * 4));
+
+            ApplicationManager.getApplication().runReadAction(() -> {
+                if (scope == null) {
+                    addScanTasks(tasks, repoFiles, index, repoFiles.myRepoRoot, GitPathIndex.ROOT, false, taskSize);
+                } else {
+                    for (String prefix : scope.getPrefixes(repoFiles)) {
+                        addScopeScanTasks(tasks, repoFiles, index, prefix, true, taskSize);
+                    }
+                    for (String prefix : scope.getDirectories(repoFiles)) {
+                        addScopeScanTasks(tasks, repoFiles, index, prefix, false, taskSize);
+                    }
+                }
+            });
+        }
+
+        ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(tasks, indicator != null ? indicator : new EmptyProgressIndicator(), task -> {
+            task.run();
+            return true;
+        });
+
+        // tasks are in repository order, directory children are not sorted
+        ArrayList<GitRepoFile> mismatches = new ArrayList<>();
+        int repoStart = 0;
+        for (int i = 0; i < tasks.size(); i++) {
+            ScanTask task = tasks.get(i);
+            mismatches.addAll(task.myMismatches);
+
+            if (i + 1 == tasks.size() || tasks.get(i + 1).myRepoFiles != task.myRepoFiles) {
+                mismatches.subList(repoStart, mismatches.size()).sort(Comparator.comparing(repoFile -> repoFile.gitPath));
+                repoStart = mismatches.size();
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.repositories = repoFilesList.size();
+            event.scoped = scope != null;
+            event.tasks = tasks.size();
+            event.mismatches = mismatches.size();
+            event.commit();
+        }
+        return mismatches;
+    }
+
+    /**
+     * Add tasks for a scope directory, its parent directories are matched on the way down
+     *
+     * @param recursive true to scan all files under the directory, false for only files directly in it
+     */
+    static void addScopeScanTasks(List<ScanTask> tasks, GitRepoFiles repoFiles, GitPathIndex index, String prefix, boolean recursive, int taskSize) {
+        VirtualFile dir = repoFiles.myRepoRoot;
+        int dirNode = GitPathIndex.ROOT;
+        boolean dirMismatched = false;
+        int iMax = prefix.length();
+        int start = 0;
+
+        while (start < iMax) {
+            int end = prefix.indexOf('/', start);
+            if (end == -1) end = iMax;
+
+            if (end > start) {
+                String segment = prefix.substring(start, end);
+                dirNode = index.findChild(dirNode, segment);
+                dir = dir.isValid() ? dir.findChild(segment) : null;
+                if (dirNode == GitPathIndex.NONE || dir == null || !dir.isDirectory()) return;
+
+                dirMismatched = dirMismatched || !dir.getName().equals(index.getName(dirNode));
+            }
+            start = end + 1;
+        }
+
+        if (recursive) {
+            addScanTasks(tasks, repoFiles, index, dir, dirNode, dirMismatched, taskSize);
+        } else {
+            VirtualFile[] children = getChildren(dir);
+            if (children == null) return;
+
+            ArrayList<VirtualFile> files = new ArrayList<>();
+            for (VirtualFile child : children) {
+                if (!child.isDirectory()) files.add(child);
+            }
+
+            if (!files.isEmpty()) {
+                tasks.add(new ScanTask(repoFiles, index, dir, dirNode, dirMismatched, files.toArray(VirtualFile.EMPTY_ARRAY)));
+            }
+        }
+    }
+
+    /**
+     * Split a directory's index files into tasks of at least taskSize files, sub-directories
+     * with more files than that are split further.
+     */
+    static void addScanTasks(List<ScanTask> tasks, GitRepoFiles repoFiles, GitPathIndex index, VirtualFile dir, int dirNode, boolean dirMismatched, int taskSize) {
+        if (index.getFileCount(dirNode) <= taskSize) {
+            tasks.add(new ScanTask(repoFiles, index, dir, dirNode, dirMismatched, null));
+            return;
+        }
+
+        VirtualFile[] children = getChildren(dir);
+        if (children == null) return;
+
+        ArrayList<VirtualFile> group = new ArrayList<>();
+        int groupSize = 0;
+
+        for (VirtualFile child : children) {
+            int node = index.findChild(dirNode, child.getName());
+            if (node == GitPathIndex.NONE) continue;
+
+            int fileCount = index.getFileCount(node);
+            if (child.isDirectory() && fileCount > taskSize) {
+                boolean mismatched = dirMismatched || !child.getName().equals(index.getName(node));
+                addScanTasks(tasks, repoFiles, index, child, node, mismatched, taskSize);
+            } else {
+                group.add(child);
+                groupSize += fileCount;
+
+                if (groupSize >= taskSize) {
+                    tasks.add(new ScanTask(repoFiles, index, dir, dirNode, dirMismatched, group.toArray(VirtualFile.EMPTY_ARRAY)));
+                    group.clear();
+                    groupSize = 0;
+                }
+            }
+        }
+
+        if (!group.isEmpty()) {
+            tasks.add(new ScanTask(repoFiles, index, dir, dirNode, dirMismatched, group.toArray(VirtualFile.EMPTY_ARRAY)));
+        }
+    }
+
+    static @Nullable VirtualFile[] getChildren(VirtualFile dir) {
+        try {
+            return dir.getChildren();
+        } catch (InvalidVirtualFileAccessException ignored) {
+            return null;
+        }
+    }
+
+    /**
+     * Virtual file tree for the mismatch detector, must be walked in a read action
+     */
+    static final class VirtualFileTree implements GitCaseMismatchDetector.FileTree<VirtualFile> {
+        static final VirtualFileTree INSTANCE = new VirtualFileTree();
+
+        private VirtualFileTree() {
+        }
+
+        @Override
+        public @NotNull String getName(@NotNull VirtualFile file) {
+            return file.getName();
+        }
+
+        @Override
+        public @NotNull String getPath(@NotNull VirtualFile file) {
+            return file.getPath();
+        }
+
+        @Override
+        public boolean isDirectory(@NotNull VirtualFile file) {
+            return file.isDirectory();
+        }
+
+        @Override
+        public @Nullable List<VirtualFile> getChildren(@NotNull VirtualFile dir) {
+            VirtualFile[] children = GitIndexFileScanner.getChildren(dir);
+            return children == null ? null : Arrays.asList(children);
+        }
+
+        @Override
+        public void checkCanceled() {
+            ProgressManager.checkCanceled();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFile;
+import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFiles;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.TreeSet;
+
+/**
+ * Directories of repositories to which a check of index files is restricted.
+ * <p>
+ * Directories are kept as path prefixes ending in '/', compared folded unless the repository is
+ * case-sensitive. An empty prefix is the root directory. A directory is in the scope with all
+ * files under it or with only the files directly in it. Directories nested in one already in
+ * the scope with all its files are not added.
+ */
+final class GitIndexScope {
+    private final HashMap<GitRepoFiles, TreeSet<String>> myPrefixes = new HashMap<>();       // all files under directory
+    private final HashMap<GitRepoFiles, TreeSet<String>> myDirectories = new HashMap<>();    // only files directly in directory
+
+    /**
+     * @param repoFiles repository
+     * @param dirKey    path of directory relative to repository root, empty for the root
+     * @param recursive true to include all files under the directory, false for only files directly in it
+     */
+    void addDirectory(@NotNull GitRepoFiles repoFiles, @NotNull String dirKey, boolean recursive) {
+        String prefix = dirKey.isEmpty() || dirKey.endsWith("/") ? dirKey : dirKey + "/";
+        TreeSet<String> prefixes = myPrefixes.get(repoFiles);
+
+        if (prefixes != null) {
+            String floor = prefixes.floor(prefix);
+            if (floor != null && startsWith(repoFiles, prefix, floor)) return;
+        }
+
+        TreeSet<String> directories = myDirectories.get(repoFiles);
+        if (recursive) {
+            if (prefixes == null) {
+                prefixes = newPrefixSet(repoFiles);
+                myPrefixes.put(repoFiles, prefixes);
+            }
+
+            prefixes.subSet(prefix, prefix + Character.MAX_VALUE).clear();
+            prefixes.add(prefix);
+            if (directories != null) directories.subSet(prefix, prefix + Character.MAX_VALUE).clear();
+        } else {
+            if (directories == null) {
+                directories = newPrefixSet(repoFiles);
+                myDirectories.put(repoFiles, directories);
+            }
+            directories.add(prefix);
+        }
+    }
+
+    /**
+     * @return directory prefixes of repository with all files under them, none if repository is not in the scope
+     */
+    @NotNull
+    Collection<String> getPrefixes(@NotNull GitRepoFiles repoFiles) {
+        TreeSet<String> prefixes = myPrefixes.get(repoFiles);
+        return prefixes == null ? Collections.emptyList() : prefixes;
+    }
+
+    /**
+     * @return directory prefixes of repository with only files directly in them
+     */
+    @NotNull
+    Collection<String> getDirectories(@NotNull GitRepoFiles repoFiles) {
+        TreeSet<String> directories = myDirectories.get(repoFiles);
+        return directories == null ? Collections.emptyList() : directories;
+    }
+
+    boolean contains(@NotNull GitRepoFiles repoFiles) {
+        return myPrefixes.containsKey(repoFiles) || myDirectories.containsKey(repoFiles);
+    }
+
+    boolean contains(@NotNull GitRepoFiles repoFiles, @NotNull String indexKey) {
+        TreeSet<String> directories = myDirectories.get(repoFiles);
+        if (directories != null && directories.contains(indexKey.substring(0, indexKey.lastIndexOf('/') + 1))) return true;
+
+        TreeSet<String> prefixes = myPrefixes.get(repoFiles);
+        if (prefixes == null) return false;
+
+        // prefixes are not nested, only the greatest one not after the key can contain it
+        String floor = prefixes.floor(indexKey);
+        return floor != null && startsWith(repoFiles, indexKey, floor);
+    }
+
+    boolean contains(@NotNull GitRepoFile repoFile) {
+        return contains(repoFile.gitRepo, repoFile.gitPath);
+    }
+
+    @NotNull
+    private static TreeSet<String> newPrefixSet(@NotNull GitRepoFiles repoFiles) {
+        return repoFiles.myCaseSensitive ? new TreeSet<>() : new TreeSet<>(GitCaseFolding::compare);
+    }
+
+    private static boolean startsWith(@NotNull GitRepoFiles repoFiles, @NotNull String path, @NotNull String prefix) {
+        return repoFiles.myCaseSensitive ? path.startsWith(prefix) : GitCaseFolding.startsWith(path, prefix);
+    }
+
+    boolean isEmpty() {
+        return myPrefixes.isEmpty() && myDirectories.isEmpty();
+    }
+}
@@ -0,0 +1,39 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import git4idea.commands.GitCommand;
+import git4idea.commands.GitLineHandler;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Line handler for commands run with {@code -z}, stdout is split on NUL and each record passed
+ * to the consumer as it arrives, without collecting the whole output. Stderr is handled as lines.
+ */
+class GitNulRecordHandler extends GitLineHandler {
+    private final @NotNull GitNulRecordSplitter mySplitter;
+
+    GitNulRecordHandler(@NotNull Project project, @NotNull VirtualFile root, @NotNull GitCommand command, @NotNull Consumer<String> recordConsumer) {
+        super(project, root, command);
+        mySplitter = new GitNulRecordSplitter(recordConsumer::consume);
+    }
+
+    @Override
+    protected void onTextAvailable(String text, Key outputType) {
+        if (outputType != ProcessOutputTypes.STDOUT) {
+            super.onTextAvailable(text, outputType);
+            return;
+        }
+
+        mySplitter.append(text);
+    }
+
+    @Override
+    protected void processTerminated(int exitCode) {
+        mySplitter.finish();
+        super.processTerminated(exitCode);
+    }
+}
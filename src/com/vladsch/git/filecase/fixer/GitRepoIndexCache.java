@@ -0,0 +1,276 @@
+package com.vladsch.git.filecase.fixer;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.PathUtil;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+
+import static com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.LOG;
+
+/**
+ * Index paths of repositories shared by all open projects, keyed by canonical repository root.
+ * <p>
+ * A project acquires an entry for each of its git roots and releases it when its roots change or
+ * it is closed. An entry is dropped when no project holds it, its snapshot stays on disk.
+ */
+public final class GitRepoIndexCache {
+    static final String SNAPSHOT_DIRECTORY = "git-file-case-fixer/index";
+    static final ExecutorService SNAPSHOT_WRITER = AppExecutorUtil.createBoundedApplicationPoolExecutor("GitFileCaseFixer Snapshot Writer", 1);
+
+    private final HashMap<String, Entry> myEntries = new HashMap<>();
+
+    @NotNull
+    public static GitRepoIndexCache getInstance() {
+        return ApplicationManager.getApplication().getService(GitRepoIndexCache.class);
+    }
+
+    /**
+     * @return entry of the repository, shared with other projects holding the same root
+     */
+    @NotNull
+    synchronized Entry acquire(@NotNull VirtualFile repoRoot) {
+        String repoPath = getCanonicalPath(repoRoot);
+        Entry entry = myEntries.computeIfAbsent(repoPath, path -> new Entry(path, repoRoot));
+        entry.myReferences++;
+        return entry;
+    }
+
+    synchronized void release(@NotNull Entry entry) {
+        if (--entry.myReferences <= 0) {
+            myEntries.remove(entry.myRepoPath, entry);
+        }
+    }
+
+    synchronized int size() {
+        return myEntries.size();
+    }
+
+    @NotNull
+    static String getCanonicalPath(@NotNull VirtualFile repoRoot) {
+        File file = VfsUtilCore.virtualToIoFile(repoRoot);
+        try {
+            return PathUtil.toSystemIndependentName(file.getCanonicalPath());
+        } catch (IOException ignored) {
+            return PathUtil.toSystemIndependentName(file.getAbsolutePath());
+        }
+    }
+
+    static @NotNull File getSnapshotFile(@NotNull String repoPath) {
+        String name = PathUtil.getFileName(repoPath);
+        return new File(PathManager.getSystemPath(), SNAPSHOT_DIRECTORY + "/" + PathUtil.suggestFileName(name) + "." + Integer.toHexString(repoPath.hashCode()) + ".index");
+    }
+
+    /**
+     * Index of one repository, loaded once for all projects holding it
+     * <p>
+     * A new index is loaded aside and published with its stamp in one write, readers never wait
+     * for a load unless the index is deferred to first use.
+     */
+    static final class Entry {
+        final @NotNull String myRepoPath;
+        final @Nullable File myIndexFile;
+        final boolean myCaseSensitive;
+        final @NotNull GitIndexSnapshot mySnapshot;
+        private final Object myLoadLock = new Object();     // held while loading, not by readers
+        private volatile @NotNull LoadedIndex myLoadedIndex; // written under load lock
+        private int myReferences;                         // guarded by cache
+
+        Entry(@NotNull String repoPath, @NotNull VirtualFile repoRoot) {
+            myRepoPath = repoPath;
+            myIndexFile = GitIndexReader.findIndexFile(new File(repoPath));
+            myCaseSensitive = repoRoot.getFileSystem().isCaseSensitive();
+            mySnapshot = new GitIndexSnapshot(getSnapshotFile(repoPath));
+            myLoadedIndex = new LoadedIndex(null, new GitPathIndex(myCaseSensitive));
+        }
+
+        boolean isIndexChanged() {
+            // without an index file there is no way to tell, always reload
+            GitIndexStamp indexStamp = myLoadedIndex.myStamp;
+            return indexStamp == null || !indexStamp.equals(GitIndexStamp.of(myIndexFile));
+        }
+
+        /**
+         * @return stamp of the index file the published index was loaded from, null if it will be reloaded
+         */
+        @Nullable
+        GitIndexStamp getLoadedStamp() {
+            return myLoadedIndex.myStamp;
+        }
+
+        /**
+         * @param project  project used to run git if the index file cannot be read
+         * @param repoRoot repository root in the project
+         *
+         * @return index paths, read from the snapshot on first use after it was validated
+         */
+        @NotNull
+        GitPathIndex getIndex(@NotNull Project project, @NotNull VirtualFile repoRoot) {
+            GitPathIndex index = myLoadedIndex.myIndex;
+            if (index != null) return index;
+
+            synchronized (myLoadLock) {
+                LoadedIndex loaded = myLoadedIndex;
+                if (loaded.myIndex != null) return loaded.myIndex;
+
+                GitIndexStamp stamp = loaded.myStamp;
+                if (stamp != null) {
+                    GitFileCaseEvents.IndexLoad event = new GitFileCaseEvents.IndexLoad();
+                    event.begin();
+                    try {
+                        index = mySnapshot.load(myRepoPath, myCaseSensitive, stamp);
+                        publish(stamp, index);
+                        commitLoadEvent(event, GitFileCaseEvents.SOURCE_SNAPSHOT, index, mySnapshot.getFile().length());
+                        return index;
+                    } catch (IOException e) {
+                        LOG.debug(String.format("Reading snapshot %s, reloading index: %s", mySnapshot.getFile().getPath(), e.getMessage()));
+                        mySnapshot.delete();
+                    }
+                }
+
+                return loadIndexFiles(project, repoRoot, GitIndexStamp.of(myIndexFile), loaded);
+            }
+        }
+
+        /**
+         * Load the index unless another project already loaded this version of it, deferred to
+         * first use if its snapshot is valid
+         */
+        void loadIndexFiles(@NotNull Project project, @NotNull VirtualFile repoRoot) {
+            synchronized (myLoadLock) {
+                // stamp taken before reading so a change while loading causes a reload next time
+                GitIndexStamp stamp = GitIndexStamp.of(myIndexFile);
+                LoadedIndex loaded = myLoadedIndex;
+                if (stamp != null && stamp.equals(loaded.myStamp)) return;
+
+                if (stamp != null && mySnapshot.isValid(myRepoPath, myCaseSensitive, stamp)) {
+                    myLoadedIndex = new LoadedIndex(stamp, null);
+                    return;
+                }
+
+                loadIndexFiles(project, repoRoot, stamp, loaded);
+            }
+        }
+
+        /**
+         * Load index paths aside then publish them, readers keep the previous index meanwhile
+         *
+         * @param previous index replaced by this load
+         *
+         * @return loaded index
+         */
+        @NotNull
+        private GitPathIndex loadIndexFiles(@NotNull Project project, @NotNull VirtualFile repoRoot, @Nullable GitIndexStamp stamp, @NotNull LoadedIndex previous) {
+            GitFileCaseEvents.IndexLoad event = new GitFileCaseEvents.IndexLoad();
+            event.begin();
+
+            try {
+                if (myIndexFile != null) {
+                    GitPathIndex index = new GitPathIndex(myCaseSensitive);
+                    try {
+                        GitIndexReader.readPaths(myIndexFile, path -> addIndexPath(index, path));
+                        publish(stamp, index);
+                        commitLoadEvent(event, GitFileCaseEvents.SOURCE_INDEX, index, stamp != null ? stamp.myLength : myIndexFile.length());
+                        saveSnapshot(stamp, index);
+                        return index;
+                    } catch (IOException e) {
+                        // unsupported index format or extension, let git list it
+                        LOG.debug(String.format("Reading index %s, falling back to git ls-files: %s", myIndexFile.getPath(), e.getMessage()));
+                    }
+                }
+
+                GitPathIndex index = new GitPathIndex(myCaseSensitive);
+                try {
+                    long[] outputLength = new long[1];
+                    GitFileFixerProjectRoots.gitFiles(project, repoRoot, path -> {
+                        addIndexPath(index, path);
+                        outputLength[0] += path.length() + 1;
+                    });
+                    publish(stamp, index);
+                    commitLoadEvent(event, GitFileCaseEvents.SOURCE_LS_FILES, index, outputLength[0]);
+                    saveSnapshot(stamp, index);
+                } catch (VcsException e) {
+                    // keep the partial list, without a stamp the next update retries
+                    LOG.warn(String.format("Listing index files of %s", myRepoPath), e);
+                    publish(null, index);
+                }
+                return index;
+            } catch (ProcessCanceledException e) {
+                // keep the previous index, force reload next time
+                myLoadedIndex = new LoadedIndex(null, previous.myIndex);
+                throw e;
+            }
+        }
+
+        private void publish(@Nullable GitIndexStamp stamp, @NotNull GitPathIndex index) {
+            index.trimToSize();
+            myLoadedIndex = new LoadedIndex(stamp, index);
+        }
+
+        private void commitLoadEvent(@NotNull GitFileCaseEvents.IndexLoad event, @NotNull String source, @NotNull GitPathIndex index, long bytes) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.repoRoot = myRepoPath;
+                event.source = source;
+                event.entries = index.size();
+                event.collisions = index.getCollisions().size();
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+
+        /**
+         * Write the snapshot of a published index in the background, skipped if a newer index
+         * was published by then
+         */
+        private void saveSnapshot(@Nullable GitIndexStamp stamp, @NotNull GitPathIndex index) {
+            // without an index file a snapshot could never be validated
+            if (stamp == null) return;
+
+            SNAPSHOT_WRITER.execute(() -> {
+                if (!stamp.equals(myLoadedIndex.myStamp)) return;
+
+                try {
+                    mySnapshot.save(myRepoPath, myCaseSensitive, stamp, index);
+                } catch (IOException e) {
+                    LOG.debug(String.format("Saving snapshot %s: %s", mySnapshot.getFile().getPath(), e.getMessage()));
+                }
+            });
+        }
+
+        private static void addIndexPath(@NotNull GitPathIndex index, @NotNull String path) {
+            ProgressManager.checkCanceled();
+            index.add(path);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return "Entry{" + myRepoPath + ", index=" + myLoadedIndex.myIndex + "}";
+        }
+    }
+
+    /**
+     * Index paths and the stamp of the index file they were loaded from, replaced as a whole
+     */
+    private static final class LoadedIndex {
+        final @Nullable GitIndexStamp myStamp;   // null to reload on next update
+        final @Nullable GitPathIndex myIndex;    // null until read from the valid snapshot of stamp
+
+        LoadedIndex(@Nullable GitIndexStamp stamp, @Nullable GitPathIndex index) {
+            myStamp = stamp;
+            myIndex = index;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.vladsch.git.filecase.fixer;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.MessageType;
@@ -10,6 +11,7 @@ import com.intellij.openapi.wm.WindowManager;
 import com.vladsch.git.filecase.fixer.GitFileFixerProjectRoots.GitRepoFile;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
 
 public class ShowGitFileCaseFixMismatchedAction extends AnAction implements DumbAware {
@@ -29,18 +31,26 @@ public class ShowGitFileCaseFixMismatchedAction extends AnAction implements Dumb
         Project project = e.getProject();
         if (project != null) {
             GitFileFixerProjectRoots projectRoots = GitFileFixerProjectRoots.getInstance(project);
-            projectRoots.clearCaches();
             ArrayList<GitRepoFile> mismatchedFiles = new ArrayList<>();
 
-            projectRoots.visitAllIndexFiles((repoFile) -> {
-                if (!repoFile.gitPath.equals(repoFile.filePath)) {
-                    mismatchedFiles.add(repoFile);
+            boolean completed = ProgressManager.getInstance().runProcessWithProgressSynchronously(() -> {
+                List<GitRepoFile> mismatches = GitFileCaseMismatchService.getInstance(project).getUpToDateMismatches();
+                if (mismatches == null) {
+                    projectRoots.updateGitRepoFilesList();
+                    mismatches = projectRoots.findMismatchedIndexFiles();
                 }
-            });
+                mismatchedFiles.addAll(projectRoots.findIndexCollisions());
+                mismatchedFiles.addAll(mismatches);
+            }, Bundle.message("git.filecase.fixer.looking.for.mismatches"), true, project);
+
+            if (!completed) return;
 
             if (!mismatchedFiles.isEmpty()) {
                 GitFileCaseShowMismatchesDialog dialog = new GitFileCaseShowMismatchesDialog(Objects.requireNonNull(WindowManager.getInstance().findVisibleFrame()).getRootPane(), mismatchedFiles);
+                GitFileCaseEvents.Dialog event = new GitFileCaseEvents.Dialog();
+                event.begin();
                 boolean result = dialog.showAndGet();
+                event.end(GitFileCaseEvents.DIALOG_MISMATCHES, mismatchedFiles.size(), result ? "fix" : "cancel");
                 if (result) {
                     dialog.applyFixes();
                 }
@@ -49,7 +59,6 @@ public class ShowGitFileCaseFixMismatchedAction extends AnAction implements Dumb
                 PopupUtil.showBalloonForActiveComponent("No Mismatches between git and file system", MessageType.INFO);
                 //PopupUtil.showBalloonForActiveComponent("No Mismatched file case", MessageType.INFO);
             }
-            projectRoots.clearCaches();
         }
     }
 }
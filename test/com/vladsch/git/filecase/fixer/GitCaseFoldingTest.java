@@ -0,0 +1,85 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GitCaseFoldingTest {
+    @Test
+    public void test_foldAscii() {
+        assertEquals('a', GitCaseFolding.fold('A'));
+        assertEquals('z', GitCaseFolding.fold('Z'));
+        assertEquals('a', GitCaseFolding.fold('a'));
+        assertEquals('/', GitCaseFolding.fold('/'));
+        assertEquals("src/main/file.java", GitCaseFolding.fold("Src/MAIN/File.java"));
+    }
+
+    @Test
+    public void test_foldUnchangedIsSame() {
+        String path = "src/main/file.java";
+        assertSame(path, GitCaseFolding.fold(path));
+    }
+
+    @Test
+    public void test_foldVariants() {
+        // final sigma, long s and Kelvin sign fold with their letters
+        assertEquals(GitCaseFolding.fold('σ'), GitCaseFolding.fold('ς'));
+        assertEquals(GitCaseFolding.fold('Σ'), GitCaseFolding.fold('ς'));
+        assertEquals(GitCaseFolding.fold('s'), GitCaseFolding.fold('ſ'));
+        assertEquals(GitCaseFolding.fold('k'), GitCaseFolding.fold('K'));
+        assertEquals("résumé.txt", GitCaseFolding.fold("RÉSUMÉ.TXT"));
+    }
+
+    @Test
+    public void test_dottedAndDotlessI() {
+        assertEquals('İ', GitCaseFolding.fold('İ'));
+        assertEquals('ı', GitCaseFolding.fold('ı'));
+        assertFalse(GitCaseFolding.equals("İ", "i"));
+        assertFalse(GitCaseFolding.equals("ı", "I"));
+        assertFalse(GitCaseFolding.equals("İ", "ı"));
+        assertTrue(GitCaseFolding.equals("I", "i"));
+    }
+
+    @Test
+    public void test_hash() {
+        String path = "dir/File.JAVA";
+        assertEquals("dir/file.java".hashCode(), GitCaseFolding.hash(path, 0, path.length()));
+        assertEquals("file".hashCode(), GitCaseFolding.hash(path, 4, 8));
+        assertEquals(0, GitCaseFolding.hash(path, 3, 3));
+    }
+
+    @Test
+    public void test_regionMatches() {
+        assertTrue(GitCaseFolding.regionMatches("dir/File.java", 4, "FILE", 0, 4));
+        assertFalse(GitCaseFolding.regionMatches("dir/File.java", 4, "Fire", 0, 4));
+        assertFalse(GitCaseFolding.regionMatches("dir/File.java", 10, "java", 0, 4));
+        assertFalse(GitCaseFolding.regionMatches("dir/File.java", -1, "dir", 0, 3));
+    }
+
+    @Test
+    public void test_equals() {
+        assertTrue(GitCaseFolding.equals("Dir/File.java", "dir/file.JAVA"));
+        assertFalse(GitCaseFolding.equals("Dir/File.java", "dir/file.jav"));
+        assertTrue(GitCaseFolding.equals("dir/File.java", 4, 8, "file"));
+        assertFalse(GitCaseFolding.equals("dir/File.java", 4, 9, "file"));
+    }
+
+    @Test
+    public void test_startsWith() {
+        assertTrue(GitCaseFolding.startsWith("Dir/File.java", "dIR/"));
+        assertFalse(GitCaseFolding.startsWith("Dir", "Dir/"));
+    }
+
+    @Test
+    public void test_compare() {
+        assertEquals(0, GitCaseFolding.compare("Dir/File", "dir/FILE"));
+        assertTrue(GitCaseFolding.compare("a", "B") < 0);
+        assertTrue(GitCaseFolding.compare("b", "A") > 0);
+        assertTrue(GitCaseFolding.compare("dir", "DIR/file") < 0);
+        assertNotEquals(0, GitCaseFolding.compare("İ", "i"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GitCaseMismatchDetectorTest {
+    @Rule
+    public TemporaryFolder myTemp = new TemporaryFolder();
+
+    private File myRoot;
+    private GitFixturePaths myPaths;
+    private GitPathIndex myIndex;
+
+    @Before
+    public void setUp() throws IOException {
+        GitFixtureGenerator generator = new GitFixtureGenerator();
+        generator.myFiles = 300;
+        generator.myDepth = 4;
+        generator.myFanOut = 4;
+        generator.myMismatchRatio = 0.1;
+        generator.myCollisionRatio = 0.05;
+        generator.mySeed = 7;
+        generator.myCommit = false;
+
+        myRoot = myTemp.newFolder("repo");
+        myPaths = generator.generate(myRoot).get(0);
+
+        File indexFile = GitIndexReader.findIndexFile(myRoot);
+        assertNotNull(indexFile);
+        myIndex = new GitPathIndex(false);
+        GitIndexReader.readPaths(indexFile, myIndex::add);
+    }
+
+    @Test
+    public void test_collisions() {
+        Set<String> expected = new HashSet<>();
+        for (String path : myPaths.myCollisionPaths) expected.add(GitCaseFolding.fold(path));
+
+        Set<String> actual = new HashSet<>();
+        for (String path : myIndex.getCollisions()) actual.add(GitCaseFolding.fold(path));
+
+        assertTrue(myPaths.myCollisionPaths.length > 0);
+        assertEquals(myPaths.myCollisionPaths.length, myIndex.getCollisions().size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void test_mismatches() {
+        // which entry of a collision the index keeps depends on index order, those are reported as collisions
+        Set<String> collisions = new HashSet<>();
+        for (String path : myPaths.myCollisionPaths) collisions.add(GitCaseFolding.fold(path));
+
+        Map<String, String> expected = new HashMap<>();
+        int directoryMismatches = 0;
+        for (int i = 0; i < myPaths.myGitPaths.length; i++) {
+            String gitPath = myPaths.myGitPaths[i];
+            String filePath = myPaths.myFilePaths[i];
+            if (gitPath.equals(filePath) || collisions.contains(GitCaseFolding.fold(gitPath))) continue;
+
+            expected.put(filePath, gitPath);
+            int nameStart = gitPath.lastIndexOf('/') + 1;
+            if (!gitPath.regionMatches(0, filePath, 0, nameStart)) directoryMismatches++;
+        }
+
+        Map<String, String> actual = new HashMap<>();
+        String prefix = myRoot.getPath().replace(File.separatorChar, '/') + "/";
+        GitCaseMismatchDetector<File> detector = new GitCaseMismatchDetector<>(GitCaseMismatchDetector.IoFileTree.INSTANCE, myIndex, prefix.length());
+        detector.findMismatches(myRoot, (file, gitPath, filePath) -> {
+            if (!collisions.contains(GitCaseFolding.fold(gitPath))) actual.put(filePath, gitPath);
+        });
+
+        assertTrue("fixture has no mismatched directories", directoryMismatches > 0);
+        assertTrue("fixture has no mismatched files", expected.size() > directoryMismatches);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void test_noMismatches() {
+        GitPathIndex index = new GitPathIndex(false);
+        for (String path : myPaths.myFilePaths) index.add(path);
+
+        String prefix = myRoot.getPath().replace(File.separatorChar, '/') + "/";
+        GitCaseMismatchDetector<File> detector = new GitCaseMismatchDetector<>(GitCaseMismatchDetector.IoFileTree.INSTANCE, index, prefix.length());
+        int[] mismatches = { 0 };
+        detector.findMismatches(myRoot, (file, gitPath, filePath) -> mismatches[0]++);
+
+        assertEquals(0, mismatches[0]);
+    }
+}
@@ -0,0 +1,80 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GitFileCaseCheckTest {
+    @Rule
+    public TemporaryFolder myTemp = new TemporaryFolder();
+
+    private File myRoot;
+    private String myEmptyBlob;
+    private final ByteArrayOutputStream myOut = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream myErr = new ByteArrayOutputStream();
+
+    @Before
+    public void setUp() throws IOException {
+        myRoot = myTemp.newFolder("repo");
+        GitProcess.git(myRoot, null, "init", "-q");
+        myEmptyBlob = GitProcess.git(myRoot, new byte[0], "hash-object", "-w", "--stdin").trim();
+    }
+
+    private void addEntries(String... paths) throws IOException {
+        StringBuilder info = new StringBuilder();
+        for (String path : paths) {
+            info.append("100644 ").append(myEmptyBlob).append('\t').append(path).append('\u0000');
+        }
+        GitProcess.git(myRoot, info.toString().getBytes(StandardCharsets.UTF_8), "update-index", "-z", "--index-info");
+    }
+
+    private int checkAll() throws IOException {
+        GitFileCaseCheck check = new GitFileCaseCheck();
+        check.myDir = myRoot;
+        check.myAll = true;
+        check.myVerbose = true;
+        check.myOut = new PrintStream(myOut, true, StandardCharsets.UTF_8);
+        check.myErr = new PrintStream(myErr, true, StandardCharsets.UTF_8);
+        return check.run();
+    }
+
+    @Test
+    public void test_noProblems() throws IOException {
+        addEntries("README.md", "src/Main.java", "src/main/File.java");
+
+        assertEquals(GitFileCaseCheck.EXIT_OK, checkAll());
+        assertEquals("", myOut.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test_collisions() throws IOException {
+        addEntries("README.md", "src/Main.java", "src/main.java");
+
+        assertEquals(GitFileCaseCheck.EXIT_PROBLEMS, checkAll());
+        assertTrue(myOut.toString(StandardCharsets.UTF_8).contains("src/main.java"));
+        assertFalse(myErr.toString(StandardCharsets.UTF_8).contains("using git ls-files"));
+    }
+
+    @Test
+    public void test_splitIndexFallsBackToLsFiles() throws IOException {
+        addEntries("README.md", "src/Main.java", "src/main.java");
+
+        // split index has the required link extension, which the index reader does not support
+        GitProcess.git(myRoot, null, "update-index", "--split-index");
+
+        assertEquals(GitFileCaseCheck.EXIT_PROBLEMS, checkAll());
+        assertTrue(myErr.toString(StandardCharsets.UTF_8).contains("using git ls-files"));
+        assertTrue(myOut.toString(StandardCharsets.UTF_8).contains("src/main.java"));
+    }
+}
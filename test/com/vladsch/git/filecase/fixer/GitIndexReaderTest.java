@@ -0,0 +1,167 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class GitIndexReaderTest {
+    @Rule
+    public TemporaryFolder myTemp = new TemporaryFolder();
+
+    private File myRoot;
+    private String myEmptyBlob;
+
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        myRoot = myTemp.newFolder("repo");
+        git(null, "init", "-q");
+        myEmptyBlob = git(new byte[0], "hash-object", "-w", "--stdin").trim();
+
+        // long and shared prefixes exercise version 4 prefix compression and the name length flag limit
+        StringBuilder longName = new StringBuilder();
+        while (longName.length() < 5000) longName.append("LongDirectoryName/");
+        addEntries(0, "README.md", "src/Main.java", "src/main/File.java", "src/main/file.java", "src/main/Résumé.txt",
+                "src/mainX/a.txt", longName + "Deep.txt", "z");
+    }
+
+    private String git(byte[] input, String... args) throws IOException, InterruptedException {
+        ArrayList<String> command = new ArrayList<>();
+        command.add("git");
+        command.addAll(Arrays.asList(args));
+
+        Process process = new ProcessBuilder(command).directory(myRoot).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (OutputStream stdin = process.getOutputStream()) {
+            if (input != null) stdin.write(input);
+        }
+
+        byte[] output;
+        try (InputStream stdout = process.getInputStream()) {
+            output = stdout.readAllBytes();
+        }
+
+        assertEquals(true, process.waitFor(1, TimeUnit.MINUTES));
+        assertEquals(String.join(" ", command), 0, process.exitValue());
+        return new String(output, StandardCharsets.UTF_8);
+    }
+
+    private List<String> lsFiles() throws IOException, InterruptedException {
+        String output = git(null, "ls-files", "-z");
+        return output.isEmpty() ? new ArrayList<>() : Arrays.asList(output.substring(0, output.length() - 1).split("\u0000"));
+    }
+
+    private void addEntries(int stage, String... paths) throws IOException, InterruptedException {
+        StringBuilder info = new StringBuilder();
+        for (String path : paths) {
+            info.append("100644 ").append(myEmptyBlob).append(' ').append(stage).append('\t').append(path).append('\u0000');
+        }
+        git(info.toString().getBytes(StandardCharsets.UTF_8), "update-index", "-z", "--index-info");
+    }
+
+    private File indexFile() {
+        File indexFile = GitIndexReader.findIndexFile(myRoot);
+        assertNotNull(indexFile);
+        return indexFile;
+    }
+
+    private List<String> readIndex() throws IOException {
+        ArrayList<String> paths = new ArrayList<>();
+        int count = GitIndexReader.readPaths(indexFile(), paths::add);
+        assertEquals(paths.size(), count);
+        return paths;
+    }
+
+    private void assertIndexVersion(int version) throws IOException, InterruptedException {
+        git(null, "update-index", "--index-version", String.valueOf(version));
+        assertEquals(version, ByteBuffer.wrap(Files.readAllBytes(indexFile().toPath())).getInt(4));
+        assertEquals(lsFiles(), readIndex());
+    }
+
+    @Test
+    public void test_version2() throws IOException, InterruptedException {
+        assertIndexVersion(2);
+    }
+
+    @Test
+    public void test_version3() throws IOException, InterruptedException {
+        // skip-worktree is an extended flag, which makes git write version 3
+        git(null, "update-index", "--skip-worktree", "src/Main.java");
+        assertIndexVersion(3);
+    }
+
+    @Test
+    public void test_version4() throws IOException, InterruptedException {
+        git(null, "update-index", "--skip-worktree", "src/Main.java");
+        assertIndexVersion(4);
+    }
+
+    @Test
+    public void test_heapBuffer() throws IOException, InterruptedException {
+        git(null, "update-index", "--index-version", "4");
+
+        ArrayList<String> paths = new ArrayList<>();
+        GitIndexReader.readPaths(ByteBuffer.wrap(Files.readAllBytes(indexFile().toPath())), paths::add);
+        assertEquals(lsFiles(), paths);
+    }
+
+    @Test
+    public void test_optionalExtensions() throws IOException, InterruptedException {
+        // write-tree adds the cache tree extension
+        git(null, "write-tree");
+        assertEquals(lsFiles(), readIndex());
+    }
+
+    @Test
+    public void test_unmergedEntries() throws IOException, InterruptedException {
+        git(null, "update-index", "--force-remove", "src/Main.java");
+        addEntries(1, "src/Main.java");
+        addEntries(2, "src/Main.java");
+        addEntries(3, "src/Main.java");
+
+        // ls-files lists each stage of an unmerged entry
+        List<String> paths = readIndex();
+        assertEquals(lsFiles().stream().distinct().collect(Collectors.toList()), paths);
+        assertEquals(1, paths.stream().filter("src/Main.java"::equals).count());
+    }
+
+    @Test(expected = GitIndexReader.UnsupportedIndexException.class)
+    public void test_truncatedVersion4() throws IOException, InterruptedException {
+        git(null, "update-index", "--index-version", "4");
+
+        // first entry ends before its prefix length, trailing bytes continue the varint
+        byte[] index = Files.readAllBytes(indexFile().toPath());
+        ByteBuffer buffer = ByteBuffer.allocate(12 + GitIndexReader.ENTRY_FIXED_SIZE + GitIndexReader.HASH_SIZE);
+        buffer.put(index, 0, 12 + GitIndexReader.ENTRY_FIXED_SIZE);
+        while (buffer.hasRemaining()) buffer.put((byte) 0x80);
+        buffer.flip();
+        GitIndexReader.readPaths(buffer, path -> { });
+    }
+
+    @Test(expected = GitIndexReader.UnsupportedIndexException.class)
+    public void test_splitIndex() throws IOException, InterruptedException {
+        // split index has the required link extension
+        git(null, "update-index", "--split-index");
+        readIndex();
+    }
+
+    @Test(expected = GitIndexReader.UnsupportedIndexException.class)
+    public void test_notIndex() throws IOException {
+        GitIndexReader.readPaths(ByteBuffer.wrap(new byte[64]), path -> { });
+    }
+}
@@ -0,0 +1,290 @@
+package com.vladsch.git.filecase.fixer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GitPathIndexTest {
+    @Rule
+    public TemporaryFolder myTemp = new TemporaryFolder();
+
+    private static GitPathIndex index(boolean caseSensitive, String... paths) {
+        GitPathIndex index = new GitPathIndex(caseSensitive);
+        for (String path : paths) index.add(path);
+        return index;
+    }
+
+    private static List<String> filePaths(GitPathIndex index) {
+        ArrayList<String> paths = new ArrayList<>();
+        addFilePaths(index, GitPathIndex.ROOT, paths);
+        return paths;
+    }
+
+    private static void addFilePaths(GitPathIndex index, int node, List<String> paths) {
+        if (index.isFile(node)) paths.add(index.getPath(node));
+        for (int child = index.getFirstChild(node); child != GitPathIndex.NONE; child = index.getNextSibling(child)) {
+            addFilePaths(index, child, paths);
+        }
+    }
+
+    @Test
+    public void test_find() {
+        GitPathIndex index = index(false, "README.md", "src/Main.java", "src/util/Util.java");
+
+        assertEquals(3, index.size());
+        int node = index.find("src/Main.java");
+        assertNotEquals(GitPathIndex.NONE, node);
+        assertEquals(node, index.find("SRC/main.JAVA"));
+        assertEquals(node, index.find("x/src/Main.java", 2));
+        assertEquals(node, index.findFile("src/Main.java"));
+        assertEquals("Main.java", index.getName(node));
+        assertEquals("src/Main.java", index.getPath(node));
+
+        int src = index.find("src");
+        assertEquals(src, index.getParent(node));
+        assertEquals(node, index.findChild(src, "MAIN.java"));
+        assertEquals(node, index.findChild(src, "x/Main.java/y", 2, 11));
+        assertFalse(index.isFile(src));
+        assertTrue(index.hasChildren(src));
+        assertEquals(2, index.getFileCount(src));
+        assertEquals(GitPathIndex.NONE, index.findFile("src"));
+        assertEquals(GitPathIndex.NONE, index.find("src/Other.java"));
+        assertEquals(GitPathIndex.NONE, index.find("Main.java"));
+    }
+
+    @Test
+    public void test_findCaseSensitive() {
+        GitPathIndex index = index(true, "src/Main.java", "src/main.java");
+
+        assertEquals(2, index.size());
+        assertTrue(index.getCollisions().isEmpty());
+        assertNotEquals(index.find("src/Main.java"), index.find("src/main.java"));
+        assertEquals(GitPathIndex.NONE, index.find("SRC/Main.java"));
+    }
+
+    @Test
+    public void test_firstCaseKept() {
+        GitPathIndex index = index(false, "Src/Main.java", "src/Other.java", "src/main.java");
+
+        assertEquals(2, index.size());
+        assertEquals(Collections.singletonList("src/main.java"), index.getCollisions());
+        assertEquals("Src", index.getName(index.find("src")));
+        assertEquals("Src/Main.java", index.getPath(index.findFile("src/main.java")));
+    }
+
+    @Test
+    public void test_duplicate() {
+        GitPathIndex index = index(false, "src/Main.java", "src/Main.java");
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.getFileCount(index.find("src")));
+        assertTrue(index.getCollisions().isEmpty());
+    }
+
+    @Test
+    public void test_collisions() {
+        GitPathIndex index = index(false, "src/Main.java", "src/main.java", "SRC/MAIN.JAVA", "src/Other.java");
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("src/main.java", "SRC/MAIN.JAVA"), index.getCollisions());
+        assertEquals("src/Main.java", index.getPath(index.findFile("src/main.java")));
+    }
+
+    @Test
+    public void test_variants() {
+        // directory case differs from the node added first
+        GitPathIndex index = index(false, "Src/Main.java", "src/Other.java", "SRC/Util/Util.java");
+
+        int main = index.findFile("src/main.java");
+        int other = index.findFile("src/other.java");
+        int util = index.findFile("src/util/util.java");
+        assertFalse(index.isVariant(main));
+        assertTrue(index.isVariant(other));
+        assertTrue(index.isVariant(util));
+        assertEquals("Src/Main.java", index.getPath(main));
+        assertEquals("src/Other.java", index.getPath(other));
+        assertEquals("SRC/Util/Util.java", index.getPath(util));
+        assertEquals("Src", index.getName(index.getParent(other)));
+        assertTrue(index.getCollisions().isEmpty());
+    }
+
+    @Test
+    public void test_findCaseCollision() {
+        GitPathIndex index = index(true, "src/Main.java", "Docs/readme.md", "lib/a.jar");
+
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("src/Main.java", 0, Collections.emptyList()));
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("src/New.java", 0, Collections.emptyList()));
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("other/Main.java", 0, Collections.emptyList()));
+        assertEquals(index.find("src/Main.java"), index.findCaseCollision("src/main.java", 0, Collections.emptyList()));
+        assertEquals(index.find("src/Main.java"), index.findCaseCollision("x/src/MAIN.java", 2, Collections.emptyList()));
+
+        // shallowest colliding directory
+        assertEquals(index.find("Docs"), index.findCaseCollision("docs/readme.md", 0, Collections.emptyList()));
+        assertEquals(index.find("Docs"), index.findCaseCollision("docs/new.md", 0, Collections.emptyList()));
+    }
+
+    @Test
+    public void test_findCaseCollisionMovedPaths() {
+        GitPathIndex index = index(true, "Docs/readme.md", "Lib/a.jar", "Lib/b.jar");
+
+        // case rename of a file or its only directory does not collide with its old path
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("docs/readme.md", 0, Collections.singletonList("Docs/readme.md")));
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("Docs/README.md", 0, Collections.singletonList("Docs/readme.md")));
+
+        // other files remain in the old directory
+        assertEquals(index.find("Lib"), index.findCaseCollision("lib/a.jar", 0, Collections.singletonList("Lib/a.jar")));
+    }
+
+    @Test
+    public void test_findCaseCollisionDirectoryRename() {
+        GitPathIndex index = index(true, "Src/a.java", "Src/b.java", "Src/x/c.java");
+        List<String> moved = Arrays.asList("x/Src/a.java", "x/Src/b.java", "x/Src/x/c.java");
+
+        // all files of the directory move to its case rename
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("x/src/a.java", 2, moved));
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("x/src/b.java", 2, moved));
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("x/src/X/c.java", 2, moved));
+
+        // a file staying behind keeps the old directory
+        assertEquals(index.find("Src"), index.findCaseCollision("x/src/a.java", 2, moved.subList(0, 2)));
+        assertEquals(index.find("Src/x"), index.findCaseCollision("x/Src/X/c.java", 2, moved.subList(0, 2)));
+    }
+
+    @Test
+    public void test_findCaseCollisionAfterAdd() {
+        GitPathIndex index = index(true, "src/Main.java");
+        assertEquals(GitPathIndex.NONE, index.findCaseCollision("src/new.java", 0, Collections.emptyList()));
+
+        index.add("src/New.java");
+        assertEquals(index.find("src/New.java"), index.findCaseCollision("src/new.java", 0, Collections.emptyList()));
+    }
+
+    @Test
+    public void test_childrenInOrderAdded() {
+        GitPathIndex index = index(true, "b.txt", "a/c.txt", "a/b.txt", "c.txt");
+
+        assertEquals(Arrays.asList("b.txt", "a/c.txt", "a/b.txt", "c.txt"), filePaths(index));
+    }
+
+    @Test
+    public void test_dottedAndDotlessI() {
+        GitPathIndex index = index(false, "I.txt", "İ.txt", "ı.txt", "i.txt");
+
+        assertEquals(3, index.size());
+        assertEquals(Collections.singletonList("i.txt"), index.getCollisions());
+        assertEquals(index.find("I.txt"), index.find("i.txt"));
+        assertNotEquals(index.find("İ.txt"), index.find("ı.txt"));
+        assertNotEquals(index.find("i.txt"), index.find("ı.txt"));
+        assertNotEquals(index.find("i.txt"), index.find("İ.txt"));
+        assertEquals("İ.txt", index.getPath(index.find("İ.txt")));
+    }
+
+    @Test
+    public void test_rehashGrowth() {
+        GitPathIndex index = new GitPathIndex(false);
+        ArrayList<String> paths = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String path = "dir" + (i % 97) + "/sub" + (i % 13) + "/File" + i + ".java";
+            paths.add(path);
+            index.add(path);
+        }
+
+        assertEquals(paths.size(), index.size());
+        assertTrue(index.getCollisions().isEmpty());
+        for (String path : paths) {
+            int node = index.findFile(path.toUpperCase());
+            assertNotEquals(path, GitPathIndex.NONE, node);
+            assertEquals(path, index.getPath(node));
+        }
+
+        index.trimToSize();
+        assertEquals(paths.size(), index.size());
+        assertEquals(paths.get(12345), index.getPath(index.findFile(paths.get(12345))));
+    }
+
+    private static GitPathIndex roundTrip(GitPathIndex index) throws IOException {
+        index.trimToSize();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            index.write(out);
+        }
+        return GitPathIndex.read(ByteBuffer.wrap(bytes.toByteArray()), index.isCaseSensitive());
+    }
+
+    @Test
+    public void test_writeRead() throws IOException {
+        GitPathIndex index = index(false, "Src/Main.java", "src/Other.java", "src/main.java", "Résumé.txt", "İ.txt", "a/b/c/d.txt");
+        GitPathIndex read = roundTrip(index);
+
+        assertEquals(index.size(), read.size());
+        assertEquals(filePaths(index), filePaths(read));
+        assertEquals(index.getCollisions(), read.getCollisions());
+        assertTrue(read.isVariant(read.findFile("src/other.java")));
+        assertEquals(read.find("RÉSUMÉ.txt"), read.findFile("résumé.TXT"));
+        assertEquals(GitPathIndex.NONE, read.find("i.txt"));
+
+        // still usable for adding after being read
+        read.add("SRC/NEW.java");
+        assertEquals("SRC/NEW.java", read.getPath(read.findFile("src/new.java")));
+    }
+
+    @Test
+    public void test_writeReadCaseSensitive() throws IOException {
+        GitPathIndex read = roundTrip(index(true, "Docs/readme.md", "docs/Other.md"));
+
+        assertEquals(2, read.size());
+        assertEquals(GitPathIndex.NONE, read.find("docs/readme.md"));
+        assertEquals(read.find("Docs"), read.findCaseCollision("docs/readme.md", 0, Collections.emptyList()));
+    }
+
+    private GitIndexStamp stamp(File indexFile, int length) throws IOException {
+        Files.write(indexFile.toPath(), new byte[length]);
+        GitIndexStamp stamp = GitIndexStamp.of(indexFile);
+        assertNotNull(stamp);
+        return stamp;
+    }
+
+    @Test
+    public void test_snapshot() throws IOException {
+        File indexFile = myTemp.newFile("index");
+        GitIndexStamp stamp = stamp(indexFile, 64);
+
+        GitPathIndex index = index(false, "Src/Main.java", "src/Other.java", "src/main.java");
+        GitIndexSnapshot snapshot = new GitIndexSnapshot(new File(myTemp.getRoot(), "snapshots/repo.idx"));
+        snapshot.save("/repo", false, stamp, index);
+
+        assertTrue(snapshot.isValid("/repo", false, stamp));
+        assertFalse(snapshot.isValid("/other", false, stamp));
+        assertFalse(snapshot.isValid("/repo", true, stamp));
+        assertFalse(snapshot.isValid("/repo", false, stamp(indexFile, 65)));
+
+        GitPathIndex loaded = snapshot.load("/repo", false, stamp);
+        assertEquals(filePaths(index), filePaths(loaded));
+        assertEquals(index.getCollisions(), loaded.getCollisions());
+    }
+
+    @Test(expected = IOException.class)
+    public void test_snapshotStale() throws IOException {
+        File indexFile = myTemp.newFile("index");
+        GitIndexSnapshot snapshot = new GitIndexSnapshot(new File(myTemp.getRoot(), "repo.idx"));
+        snapshot.save("/repo", false, stamp(indexFile, 64), index(false, "a.txt"));
+        snapshot.load("/repo", false, stamp(indexFile, 65));
+    }
+}